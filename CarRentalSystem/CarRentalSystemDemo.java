@@ -1,9 +1,11 @@
 package CarRentalSystem;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 
 /* ===========================
@@ -15,7 +17,7 @@ enum CarType {
 }
 
 enum ReservationStatus {
-    CREATED, CANCELLED
+    CREATED, CONFIRMED, CANCELLED
 }
 
 /* ===========================
@@ -28,7 +30,7 @@ class Car {
     private final String model;
     private final CarType carType;
     private final double pricePerDay;
-    private boolean available = true;
+    private final AvailabilityCalendar calendar = new AvailabilityCalendar(this);
 
     public Car(String id, String make, String model, CarType carType, double pricePerDay) {
         this.id = id;
@@ -42,12 +44,34 @@ class Car {
     public CarType getCarType() { return carType; }
     public double getPricePerDay() { return pricePerDay; }
 
-    public synchronized boolean isAvailable() {
-        return available;
+    /** Free for the whole of [start, end). */
+    public boolean isAvailable(LocalDate start, LocalDate end) {
+        return calendar.isFree(start, end);
     }
 
-    public synchronized void setAvailable(boolean available) {
-        this.available = available;
+    /** Holds [start, end) until expiresAtMillis unless any day of it is taken; null if taken. */
+    public Booking hold(LocalDate start, LocalDate end, long expiresAtMillis) {
+        return calendar.hold(start, end, expiresAtMillis);
+    }
+
+    /** Books [start, end) outright unless any day of it is already taken. */
+    public boolean book(LocalDate start, LocalDate end) {
+        Booking booking = calendar.hold(start, end, Long.MAX_VALUE);
+        return booking != null && booking.confirm();
+    }
+
+    public void release(LocalDate start, LocalDate end) {
+        calendar.release(start, end);
+    }
+
+    /** Bookings whose payment has been confirmed and that still hold their dates. */
+    public List<Booking> reservedBookings() {
+        return calendar.reservedBookings();
+    }
+
+    /** Told whenever a booking of this car is confirmed or a confirmed one is released. */
+    public void setBookingObserver(BookingObserver observer) {
+        calendar.setObserver(observer);
     }
 
     @Override
@@ -56,6 +80,208 @@ class Car {
     }
 }
 
+/* ===========================
+   AVAILABILITY CALENDAR
+   =========================== */
+
+/**
+ * One booked date range of a car. It starts HELD until its expiry, then moves once,
+ * by CAS, to RESERVED (payment confirmed) or RELEASED (cancelled, failed or expired),
+ * so a late confirmation and the reaper can never both win.
+ */
+class Booking implements Delayed {
+    enum State { HELD, RESERVED, RELEASED }
+
+    private final AvailabilityCalendar calendar;
+    private final LocalDate start;
+    private final LocalDate end;
+    private final long expiresAtMillis;
+    private final AtomicReference<State> state = new AtomicReference<>(State.HELD);
+    // Epoch days [from, to) counted as demand by the pricing engine; guarded by its demand table
+    private long countedFrom;
+    private long countedTo;
+    private boolean uncounted;
+
+    Booking(AvailabilityCalendar calendar, LocalDate start, LocalDate end, long expiresAtMillis) {
+        this.calendar = calendar;
+        this.start = start;
+        this.end = end;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public LocalDate getStart() { return start; }
+    public LocalDate getEnd() { return end; }
+    public State getState() { return state.get(); }
+
+    /** HELD -> RESERVED; fails once the hold has expired or been released. */
+    public boolean confirm() {
+        if (System.currentTimeMillis() >= expiresAtMillis || !state.compareAndSet(State.HELD, State.RESERVED))
+            return false;
+        calendar.reserved(this);
+        return true;
+    }
+
+    /** Gives the dates back, whether held or reserved. */
+    public boolean release() {
+        State previous = state.getAndSet(State.RELEASED);
+        if (previous == State.RELEASED)
+            return false;
+        calendar.remove(this);
+        if (previous == State.RESERVED) {
+            calendar.released(this);
+        }
+        return true;
+    }
+
+    /** HELD -> RELEASED once past the expiry; what the reaper calls. */
+    public boolean expire(long nowMillis) {
+        if (nowMillis < expiresAtMillis || !state.compareAndSet(State.HELD, State.RELEASED))
+            return false;
+        calendar.remove(this);
+        return true;
+    }
+
+    /** Still blocks its dates: reserved, or held and not yet expired. */
+    boolean isLive(long nowMillis) {
+        State current = state.get();
+        return current == State.RESERVED || (current == State.HELD && nowMillis < expiresAtMillis);
+    }
+
+    long getCountedFrom() { return countedFrom; }
+    long getCountedTo() { return countedTo; }
+
+    void recordCounted(long from, long to) {
+        countedFrom = from;
+        countedTo = to;
+    }
+
+    /** Marks the demand as given back; false if it already was, so it is never given back twice. */
+    boolean uncount() {
+        if (uncounted)
+            return false;
+        uncounted = true;
+        return true;
+    }
+
+    boolean isUncounted() { return uncounted; }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(expiresAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+}
+
+/**
+ * Bookings of one car as [start, end) date ranges, sorted by start. Stored ranges never
+ * overlap: a new hold first drops any expired booking in its way. So the bookings a
+ * window can collide with are the few ending after its start, found by walking back
+ * from the last one starting before its end, and checks and holds are O(log n).
+ * Only inserting and removing take the monitor; state changes are CAS on the Booking.
+ */
+class AvailabilityCalendar {
+    private final Car car;
+    private final TreeMap<LocalDate, Booking> bookings = new TreeMap<>();
+    private volatile BookingObserver observer;
+
+    AvailabilityCalendar(Car car) {
+        this.car = car;
+    }
+
+    void setObserver(BookingObserver observer) {
+        this.observer = observer;
+    }
+
+    public synchronized boolean isFree(LocalDate start, LocalDate end) {
+        checkRange(start, end);
+        long now = System.currentTimeMillis();
+        for (Booking booking : overlapping(start, end)) {
+            if (booking.isLive(now))
+                return false;
+        }
+        return true;
+    }
+
+    public synchronized Booking hold(LocalDate start, LocalDate end, long expiresAtMillis) {
+        checkRange(start, end);
+        long now = System.currentTimeMillis();
+        List<Booking> overlapping = overlapping(start, end);
+        for (Booking booking : overlapping) {
+            if (booking.isLive(now))
+                return null;
+        }
+        for (Booking expired : overlapping) {
+            // A confirmation that passed its expiry check just in time can still win the CAS
+            if (!expired.expire(now) && expired.getState() != Booking.State.RELEASED)
+                return null;
+        }
+        for (Booking expired : overlapping) {
+            bookings.remove(expired.getStart(), expired); // already released ones may still be listed
+        }
+        Booking hold = new Booking(this, start, end, expiresAtMillis);
+        bookings.put(start, hold);
+        return hold;
+    }
+
+    /** Releases the reserved or held booking covering exactly [start, end), if any. */
+    public void release(LocalDate start, LocalDate end) {
+        Booking booking;
+        synchronized (this) {
+            booking = bookings.get(start);
+        }
+        if (booking != null && booking.getEnd().equals(end)) {
+            booking.release();
+        }
+    }
+
+    synchronized List<Booking> reservedBookings() {
+        List<Booking> reserved = new ArrayList<>();
+        for (Booking booking : bookings.values()) {
+            if (booking.getState() == Booking.State.RESERVED) {
+                reserved.add(booking);
+            }
+        }
+        return reserved;
+    }
+
+    synchronized void remove(Booking booking) {
+        bookings.remove(booking.getStart(), booking);
+    }
+
+    void reserved(Booking booking) {
+        BookingObserver current = observer;
+        if (current != null) {
+            current.onReserved(car, booking);
+        }
+    }
+
+    void released(Booking booking) {
+        BookingObserver current = observer;
+        if (current != null) {
+            current.onReleased(car, booking);
+        }
+    }
+
+    private List<Booking> overlapping(LocalDate start, LocalDate end) {
+        List<Booking> overlapping = new ArrayList<>();
+        for (Booking booking : bookings.headMap(end, false).descendingMap().values()) {
+            if (!booking.getEnd().isAfter(start))
+                break;
+            overlapping.add(booking);
+        }
+        return overlapping;
+    }
+
+    static void checkRange(LocalDate start, LocalDate end) {
+        if (!start.isBefore(end))
+            throw new IllegalArgumentException("Start date must be before end date");
+    }
+}
+
 /* ===========================
    CUSTOMER
    =========================== */
@@ -83,24 +309,46 @@ class Reservation {
     private final LocalDate start;
     private final LocalDate end;
     private final double totalPrice;
-    private ReservationStatus status;
+    private final Booking booking; // null when the dates were booked outside a hold
+    private volatile ReservationStatus status;
 
     public Reservation(Car car, Customer customer, LocalDate start, LocalDate end) {
+        this(car, customer, start, end, null,
+                ChronoUnit.DAYS.between(start, end) * car.getPricePerDay());
+    }
+
+    Reservation(Car car, Customer customer, Booking booking, double totalPrice) {
+        this(car, customer, booking.getStart(), booking.getEnd(), booking, totalPrice);
+    }
+
+    private Reservation(Car car, Customer customer, LocalDate start, LocalDate end, Booking booking,
+                        double totalPrice) {
         this.id = UUID.randomUUID().toString();
         this.car = car;
         this.customer = customer;
         this.start = start;
         this.end = end;
-        this.totalPrice =
-                ChronoUnit.DAYS.between(start, end) * car.getPricePerDay();
+        this.totalPrice = totalPrice;
+        this.booking = booking;
         this.status = ReservationStatus.CREATED;
     }
 
     public double getTotalPrice() { return totalPrice; }
+    public LocalDate getStart() { return start; }
+    public LocalDate getEnd() { return end; }
+    public ReservationStatus getStatus() { return status; }
+
+    public void confirm() {
+        status = ReservationStatus.CONFIRMED;
+    }
 
     public void cancel() {
         status = ReservationStatus.CANCELLED;
-        car.setAvailable(true);
+        if (booking != null) {
+            booking.release();
+        } else {
+            car.release(start, end);
+        }
     }
 }
 
@@ -110,37 +358,529 @@ class Reservation {
 
 interface PaymentStrategy {
     void pay(double amount);
+
+    /** Gives back a charge that went through after its reservation was abandoned. */
+    void refund(double amount);
+
+    /** Pays without blocking the caller; blocking implementations run on the executor. */
+    default CompletableFuture<Void> payAsync(double amount, Executor executor) {
+        return CompletableFuture.runAsync(() -> pay(amount), executor);
+    }
 }
 
 class CreditCardPayment implements PaymentStrategy {
     public void pay(double amount) {
         System.out.println("Paid " + amount + " using Credit Card");
     }
+
+    public void refund(double amount) {
+        System.out.println("Refunded " + amount + " to Credit Card");
+    }
 }
 
 class UpiPayment implements PaymentStrategy {
     public void pay(double amount) {
         System.out.println("Paid " + amount + " using UPI");
     }
+
+    public void refund(double amount) {
+        System.out.println("Refunded " + amount + " to UPI");
+    }
+}
+
+/** Stand-in for a remote gateway that answers after a fixed latency, holding no thread meanwhile. */
+class SimulatedGatewayPayment implements PaymentStrategy {
+    private final long latencyMillis;
+
+    public SimulatedGatewayPayment(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void pay(double amount) {
+        payAsync(amount, Runnable::run).join();
+    }
+
+    @Override
+    public CompletableFuture<Void> payAsync(double amount, Executor executor) {
+        return CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(latencyMillis, TimeUnit.MILLISECONDS));
+    }
+
+    public void refund(double amount) {
+    }
+}
+
+/* ===========================
+   BATCHED SETTLEMENT
+   =========================== */
+
+/** Where batched charges are settled, e.g. an acquirer's bulk API. */
+interface SettlementBackend {
+    /** Settles all charges in one call; result[i] tells whether amounts[i] went through. */
+    boolean[] settle(double[] amounts);
+
+    /** Reverses one charge that an earlier settle call accepted. */
+    void refund(double amount);
+}
+
+/** Local stand-in that accepts every charge and logs each call. */
+class LocalSettlementBackend implements SettlementBackend {
+    public boolean[] settle(double[] amounts) {
+        double total = 0;
+        for (double amount : amounts) {
+            total += amount;
+        }
+        System.out.println("Settled " + amounts.length + " charges, total " + total + ", in one call");
+        boolean[] accepted = new boolean[amounts.length];
+        Arrays.fill(accepted, true);
+        return accepted;
+    }
+
+    public void refund(double amount) {
+        System.out.println("Refunded " + amount);
+    }
+}
+
+/**
+ * Collects charges and settles them in one backend call per batch. A batch closes when
+ * it reaches maxBatchSize or when windowMillis have passed since its first charge,
+ * whichever is first. Each caller gets its own future, completed from its own result.
+ * After shutdown new charges fail at once, and a charge the settler can no longer take
+ * fails instead of waiting forever.
+ */
+class BatchingPayment implements PaymentStrategy {
+    private final SettlementBackend backend;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    // Runs window timers and settlements, one batch at a time
+    private final ScheduledExecutorService settler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "payment-settler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private List<PendingCharge> open = new ArrayList<>(); // guarded by lock
+    private ScheduledFuture<?> windowTimer;              // guarded by lock
+    private boolean closed;                              // guarded by lock
+
+    public BatchingPayment(SettlementBackend backend, int maxBatchSize, long windowMillis) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive");
+        this.backend = backend;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+    }
+
+    public void pay(double amount) {
+        payAsync(amount, Runnable::run).join();
+    }
+
+    @Override
+    public CompletableFuture<Void> payAsync(double amount, Executor executor) {
+        PendingCharge charge = new PendingCharge(amount);
+        List<PendingCharge> full = null;
+        synchronized (lock) {
+            if (closed)
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Payment batching is shut down"));
+            open.add(charge);
+            if (open.size() >= maxBatchSize) {
+                full = closeBatch();
+            } else if (open.size() == 1) {
+                try {
+                    windowTimer = settler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    fail(closeBatch(), e);
+                }
+            }
+        }
+        if (full != null) {
+            List<PendingCharge> batch = full;
+            try {
+                settler.execute(() -> settle(batch));
+            } catch (RejectedExecutionException e) {
+                fail(batch, e);
+            }
+        }
+        return charge.result;
+    }
+
+    // Refunds are rare and go straight to the backend rather than into a batch
+    public void refund(double amount) {
+        backend.refund(amount);
+    }
+
+    /** Settles whatever is waiting now, without waiting for the window. */
+    public void flush() {
+        List<PendingCharge> batch;
+        synchronized (lock) {
+            if (open.isEmpty())
+                return;
+            batch = closeBatch();
+        }
+        settle(batch);
+    }
+
+    /** Stops taking charges; those already waiting are still settled. */
+    public void shutdown() {
+        synchronized (lock) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        settler.execute(this::flush);
+        settler.shutdown();
+    }
+
+    private List<PendingCharge> closeBatch() {
+        List<PendingCharge> batch = open;
+        open = new ArrayList<>();
+        if (windowTimer != null) {
+            windowTimer.cancel(false);
+            windowTimer = null;
+        }
+        return batch;
+    }
+
+    private void settle(List<PendingCharge> batch) {
+        double[] amounts = new double[batch.size()];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = batch.get(i).amount;
+        }
+        try {
+            boolean[] accepted = backend.settle(amounts);
+            if (accepted.length != amounts.length)
+                throw new IllegalStateException("Backend returned " + accepted.length + " results for " + amounts.length + " charges");
+            for (int i = 0; i < accepted.length; i++) {
+                if (accepted[i]) {
+                    batch.get(i).result.complete(null);
+                } else {
+                    batch.get(i).result.completeExceptionally(new RuntimeException("Charge of " + amounts[i] + " declined"));
+                }
+            }
+        } catch (RuntimeException e) {
+            fail(batch, e);
+        }
+    }
+
+    private static void fail(List<PendingCharge> batch, Throwable cause) {
+        batch.forEach(charge -> charge.result.completeExceptionally(cause));
+    }
+
+    private static class PendingCharge {
+        final double amount;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        PendingCharge(double amount) {
+            this.amount = amount;
+        }
+    }
 }
 
 /* ===========================
-   SEARCH CRITERIA (Predicate-based)
+   DYNAMIC PRICING
+   =========================== */
+
+interface BookingObserver {
+    void onReserved(Car car, Booking booking);
+    void onReleased(Car car, Booking booking);
+}
+
+/**
+ * Demand-based daily prices per CarType. For each type it keeps, over the next
+ * HORIZON_DAYS days, the number of reserved cars and a precomputed price multiplier
+ * per day: once more than half the type's fleet is reserved the price rises linearly,
+ * up to +50% when fully booked, and weekends add 10%. A reservation recomputes only
+ * the days it covers, and a quote is one table lookup per day. Demand beyond the
+ * horizon is not tracked, so those days get the weekend factor alone. Each booking
+ * records the days it was counted on, and its release gives back exactly those.
+ */
+class PricingEngine implements BookingObserver {
+    static final int HORIZON_DAYS = 366;
+    private static final double SURGE_THRESHOLD = 0.5;
+    private static final double WEEKEND_FACTOR = 1.1;
+
+    private final Map<CarType, DemandTable> tables = new EnumMap<>(CarType.class);
+
+    public PricingEngine() {
+        // Filled once up front, so the EnumMap itself is never written concurrently
+        long today = LocalDate.now().toEpochDay();
+        for (CarType type : CarType.values()) {
+            tables.put(type, new DemandTable(today));
+        }
+    }
+
+    public void addCar(Car car) {
+        tables.get(car.getCarType()).resizeFleet(1);
+    }
+
+    /** Takes the car out of its fleet, along with the demand of its reserved bookings. */
+    public void removeCar(Car car) {
+        DemandTable table = tables.get(car.getCarType());
+        for (Booking booking : car.reservedBookings()) {
+            table.release(booking);
+        }
+        table.resizeFleet(-1);
+    }
+
+    /** Price of the car for [start, end). */
+    public double quote(Car car, LocalDate start, LocalDate end) {
+        AvailabilityCalendar.checkRange(start, end);
+        PriceTable table = tables.get(car.getCarType()).current();
+        double multiplierSum = 0;
+        for (long day = start.toEpochDay(); day < end.toEpochDay(); day++) {
+            multiplierSum += table.multiplier(day);
+        }
+        return multiplierSum * car.getPricePerDay();
+    }
+
+    @Override
+    public void onReserved(Car car, Booking booking) {
+        tables.get(car.getCarType()).reserve(booking);
+    }
+
+    @Override
+    public void onReleased(Car car, Booking booking) {
+        tables.get(car.getCarType()).release(booking);
+    }
+
+    // Epoch day 0 was a Thursday; Saturday and Sunday are 5 and 6 counting from Monday
+    static double dateFactor(long epochDay) {
+        return Math.floorMod(epochDay + 3, 7) >= 5 ? WEEKEND_FACTOR : 1.0;
+    }
+
+    /** Immutable and published whole, so a quote never sees a half-updated table. */
+    private static final class PriceTable {
+        final long firstDay;
+        final double[] multipliers;
+
+        PriceTable(long firstDay, double[] multipliers) {
+            this.firstDay = firstDay;
+            this.multipliers = multipliers;
+        }
+
+        double multiplier(long epochDay) {
+            long index = epochDay - firstDay;
+            return index >= 0 && index < multipliers.length ? multipliers[(int) index] : dateFactor(epochDay);
+        }
+    }
+
+    /** Reserved-car counts of one type. Writers serialize on it; quotes only read the published table. */
+    private static final class DemandTable {
+        private final int[] reserved = new int[HORIZON_DAYS];
+        private int fleetSize;
+        private long firstDay;
+        private volatile PriceTable published;
+
+        DemandTable(long today) {
+            this.firstDay = today;
+            rebuild();
+        }
+
+        PriceTable current() {
+            PriceTable table = published;
+            long today = LocalDate.now().toEpochDay();
+            return table.firstDay >= today ? table : rollTo(today);
+        }
+
+        synchronized void resizeFleet(int delta) {
+            rollTo(LocalDate.now().toEpochDay());
+            fleetSize += delta;
+            // With nothing reserved every day prices at zero utilization, whatever the fleet size
+            for (int count : reserved) {
+                if (count > 0) {
+                    rebuild();
+                    return;
+                }
+            }
+        }
+
+        /** Counts the booking's days inside the horizon and records them on the booking. */
+        synchronized void reserve(Booking booking) {
+            // Released before its confirmation got here, or its car has left the fleet
+            if (booking.isUncounted())
+                return;
+            rollTo(LocalDate.now().toEpochDay());
+            long from = Math.max(firstDay, booking.getStart().toEpochDay());
+            long to = Math.max(from, Math.min(firstDay + HORIZON_DAYS, booking.getEnd().toEpochDay()));
+            booking.recordCounted(from, to);
+            addReserved(from, to, 1);
+        }
+
+        /** Gives back the days the booking was counted on, at most once. */
+        synchronized void release(Booking booking) {
+            if (!booking.uncount())
+                return;
+            rollTo(LocalDate.now().toEpochDay());
+            // Counted days that have since passed were dropped by rollTo already
+            addReserved(Math.max(firstDay, booking.getCountedFrom()), booking.getCountedTo(), -1);
+        }
+
+        private void addReserved(long fromDay, long toDay, int delta) {
+            int from = (int) (fromDay - firstDay);
+            int to = (int) (toDay - firstDay);
+            if (from >= to)
+                return;
+            double[] multipliers = published.multipliers.clone();
+            for (int i = from; i < to; i++) {
+                reserved[i] += delta;
+                multipliers[i] = multiplier(i);
+            }
+            published = new PriceTable(firstDay, multipliers);
+        }
+
+        // Drops the days that have passed once the date changes
+        private synchronized PriceTable rollTo(long today) {
+            long elapsed = today - firstDay;
+            if (elapsed > 0) {
+                int kept = (int) Math.max(0, HORIZON_DAYS - elapsed);
+                System.arraycopy(reserved, HORIZON_DAYS - kept, reserved, 0, kept);
+                Arrays.fill(reserved, kept, HORIZON_DAYS, 0);
+                firstDay = today;
+                rebuild();
+            }
+            return published;
+        }
+
+        private void rebuild() {
+            double[] multipliers = new double[HORIZON_DAYS];
+            for (int i = 0; i < HORIZON_DAYS; i++) {
+                multipliers[i] = multiplier(i);
+            }
+            published = new PriceTable(firstDay, multipliers);
+        }
+
+        private double multiplier(int index) {
+            double utilization = fleetSize == 0 ? 0 : (double) reserved[index] / fleetSize;
+            return (1.0 + Math.max(0, utilization - SURGE_THRESHOLD)) * dateFactor(firstDay + index);
+        }
+    }
+}
+
+/* ===========================
+   SEARCH CRITERIA (compiled to index ranges)
    =========================== */
 
 class SearchCriteria {
-    private Predicate<Car> predicate = car -> true;
+    private final EnumSet<CarType> carTypes = EnumSet.allOf(CarType.class);
+    private double maxPrice = Double.POSITIVE_INFINITY;
+    private LocalDate availableFrom;
+    private LocalDate availableTo;
 
     public void byCarType(CarType type) {
-        predicate = predicate.and(car -> car.getCarType() == type);
+        carTypes.retainAll(EnumSet.of(type));
     }
 
     public void byMaxPrice(double maxPrice) {
-        predicate = predicate.and(car -> car.getPricePerDay() <= maxPrice);
+        this.maxPrice = Math.min(this.maxPrice, maxPrice);
+    }
+
+    /** Only cars free on every day of [start, end); without it, cars free today. */
+    public void byAvailability(LocalDate start, LocalDate end) {
+        AvailabilityCalendar.checkRange(start, end);
+        availableFrom = start;
+        availableTo = end;
+    }
+
+    /** Compiles the criteria once into the index ranges a search has to read. */
+    public SearchPlan compile() {
+        LocalDate from = availableFrom != null ? availableFrom : LocalDate.now();
+        LocalDate to = availableTo != null ? availableTo : from.plusDays(1);
+        return new SearchPlan(EnumSet.copyOf(carTypes), maxPrice, from, to);
     }
 
     public Predicate<Car> build() {
-        return predicate;
+        return compile()::matches;
+    }
+}
+
+/**
+ * A compiled search: for every requested type, the price range [0, maxPrice] of that
+ * type's price index. Only cars inside those ranges are read, and only they pay for
+ * the calendar check.
+ */
+class SearchPlan {
+    private final Set<CarType> carTypes;
+    private final double maxPrice;
+    private final LocalDate from;
+    private final LocalDate to;
+
+    SearchPlan(Set<CarType> carTypes, double maxPrice, LocalDate from, LocalDate to) {
+        this.carTypes = carTypes;
+        this.maxPrice = maxPrice;
+        this.from = from;
+        this.to = to;
+    }
+
+    public List<Car> execute(CarInventory inventory) {
+        List<Car> result = new ArrayList<>();
+        for (CarType type : carTypes) {
+            for (Set<Car> atPrice : inventory.carsUpTo(type, maxPrice)) {
+                for (Car car : atPrice) {
+                    if (car.isAvailable(from, to)) {
+                        result.add(car);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public boolean matches(Car car) {
+        return carTypes.contains(car.getCarType())
+                && car.getPricePerDay() <= maxPrice
+                && car.isAvailable(from, to);
+    }
+}
+
+/* ===========================
+   INVENTORY INDEXES
+   =========================== */
+
+/**
+ * Cars by id, plus one price index per CarType: a sorted map from daily price to the
+ * cars at that price. A type plus max-price query is one head-map per type.
+ * Writers are serialized, so the id map and the price index always change together;
+ * a replacement car is indexed before its predecessor leaves the index, so a search
+ * never misses the id.
+ */
+class CarInventory {
+    private final Map<String, Car> cars = new ConcurrentHashMap<>();
+    private final Map<CarType, ConcurrentSkipListMap<Double, Set<Car>>> priceIndex = new EnumMap<>(CarType.class);
+
+    public CarInventory() {
+        // Filled once up front, so the EnumMap itself is never written concurrently
+        for (CarType type : CarType.values()) {
+            priceIndex.put(type, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /** Returns the car previously registered under the same id, or null. */
+    public synchronized Car add(Car car) {
+        priceIndex.get(car.getCarType())
+                .computeIfAbsent(car.getPricePerDay(), price -> ConcurrentHashMap.newKeySet())
+                .add(car);
+        Car replaced = cars.put(car.getId(), car);
+        if (replaced != null && replaced != car) {
+            priceIndex.get(replaced.getCarType()).computeIfPresent(replaced.getPricePerDay(), (price, atPrice) -> {
+                atPrice.remove(replaced);
+                return atPrice.isEmpty() ? null : atPrice;
+            });
+        }
+        return replaced;
+    }
+
+    public Car get(String carId) {
+        return cars.get(carId);
+    }
+
+    public int size() {
+        return cars.size();
+    }
+
+    /** Cars of the type priced at most maxPrice, cheapest first. */
+    public Collection<Set<Car>> carsUpTo(CarType type, double maxPrice) {
+        return priceIndex.get(type).headMap(maxPrice, true).values();
     }
 }
 
@@ -152,10 +892,25 @@ class CarRentalSystem {
 
     private static volatile CarRentalSystem instance;
 
-    private final Map<String, Car> cars = new ConcurrentHashMap<>();
-    private final ExecutorService executor = Executors.newFixedThreadPool(5);
+    private static final long PAYMENT_TIMEOUT_MILLIS = 5_000;
+    // Outlives the payment timeout, so only abandoned holds ever expire
+    private static final long HOLD_MILLIS = 2 * PAYMENT_TIMEOUT_MILLIS;
+    private static final int REAP_BATCH_SIZE = 512;
+
+    private final CarInventory inventory = new CarInventory();
+    private final PricingEngine pricing = new PricingEngine();
+    // Only blocking PaymentStrategy implementations occupy these threads; async ones return at once
+    private final ExecutorService paymentExecutor = Executors.newFixedThreadPool(64);
+    private final DelayQueue<Booking> expiringHolds = new DelayQueue<>();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hold-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private CarRentalSystem() {}
+    private CarRentalSystem() {
+        reaper.scheduleWithFixedDelay(this::reapExpiredHolds, 1, 1, TimeUnit.SECONDS);
+    }
 
     public static CarRentalSystem getInstance() {
         if (instance == null) {
@@ -171,19 +926,64 @@ class CarRentalSystem {
     /* ---------- Inventory ---------- */
 
     public void addCar(Car car) {
-        cars.put(car.getId(), car);
+        car.setBookingObserver(pricing);
+        Car replaced = inventory.add(car);
+        if (replaced == car)
+            return;
+        if (replaced != null) {
+            // Detached first, so a confirmation racing the removal is either listed or never counted
+            replaced.setBookingObserver(null);
+            pricing.removeCar(replaced);
+        }
+        pricing.addCar(car);
+    }
+
+    /** Current demand-based price of the car for [start, end). */
+    public double quote(String carId, LocalDate start, LocalDate end) {
+        Car car = inventory.get(carId);
+        if (car == null)
+            throw new IllegalArgumentException("Unknown car " + carId);
+        return pricing.quote(car, start, end);
+    }
+
+    public Car getCar(String carId) {
+        return inventory.get(carId);
     }
 
     /* ---------- Search ---------- */
 
     public List<Car> searchCars(SearchCriteria criteria) {
-        List<Car> result = new ArrayList<>();
-        for (Car car : cars.values()) {
-            if (criteria.build().test(car) && car.isAvailable()) {
-                result.add(car);
+        return criteria.compile().execute(inventory);
+    }
+
+    /* ---------- Holds ---------- */
+
+    /** Holds the dates for a checkout; unless confirmed in time, the reaper gives them back. */
+    public Booking holdCar(String carId, LocalDate start, LocalDate end) {
+        Car car = inventory.get(carId);
+        if (car == null)
+            throw new IllegalArgumentException("Unknown car " + carId);
+        return hold(car, start, end);
+    }
+
+    private Booking hold(Car car, LocalDate start, LocalDate end) {
+        Booking hold = car.hold(start, end, System.currentTimeMillis() + HOLD_MILLIS);
+        if (hold != null) {
+            expiringHolds.add(hold);
+        }
+        return hold;
+    }
+
+    // DelayQueue hands out only holds past their expiry; confirmed or released ones fail the CAS
+    private void reapExpiredHolds() {
+        List<Booking> batch = new ArrayList<>(REAP_BATCH_SIZE);
+        long now = System.currentTimeMillis();
+        while (expiringHolds.drainTo(batch, REAP_BATCH_SIZE) > 0) {
+            for (Booking hold : batch) {
+                hold.expire(now);
             }
+            batch.clear();
         }
-        return result;
     }
 
     /* ---------- Reservation ---------- */
@@ -195,27 +995,140 @@ class CarRentalSystem {
             LocalDate end,
             PaymentStrategy paymentStrategy) {
 
-        return executor.submit(() -> {
+        return reserveCarAsync(carId, customer, start, end, paymentStrategy);
+    }
 
-            Car car = cars.get(carId);
+    /**
+     * Holds the dates on the caller's thread, then pays asynchronously: the reservation is
+     * confirmed when payment succeeds, and the hold is released if it fails or takes longer
+     * than the payment timeout. No thread waits on the payment unless the strategy blocks.
+     * A charge that still goes through after the reservation was given up is refunded.
+     */
+    public CompletableFuture<Reservation> reserveCarAsync(
+            String carId,
+            Customer customer,
+            LocalDate start,
+            LocalDate end,
+            PaymentStrategy paymentStrategy) {
 
-            synchronized (car) {
-                if (!car.isAvailable()) {
-                    throw new RuntimeException("Car not available");
-                }
-                car.setAvailable(false);
-            }
+        // Resolved once: the hold, the quote and the reservation all use this car, even if the id is re-added
+        Car car = inventory.get(carId);
+        if (car == null)
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown car " + carId));
+        Booking hold;
+        try {
+            hold = hold(car, start, end);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (hold == null) {
+            return CompletableFuture.failedFuture(
+                    new RuntimeException("Car not available from " + start + " to " + end));
+        }
 
-            Reservation reservation =
-                    new Reservation(car, customer, start, end);
+        Reservation reservation = new Reservation(car, customer, hold, pricing.quote(car, start, end));
+        double amount = reservation.getTotalPrice();
+        CompletableFuture<Void> payment = paymentStrategy.payAsync(amount, paymentExecutor);
+        // The timeout applies to a copy, so the real outcome of a slow payment is still observed
+        return payment.copy()
+                .orTimeout(PAYMENT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .handle((paid, failure) -> {
+                    if (failure != null) {
+                        reservation.cancel();
+                        refundIfCharged(payment, paymentStrategy, amount);
+                        throw new CompletionException("Payment failed, car " + carId + " released", failure);
+                    }
+                    if (!hold.confirm()) {
+                        reservation.cancel();
+                        refundIfCharged(payment, paymentStrategy, amount);
+                        throw new CompletionException(new IllegalStateException(
+                                "Hold on car " + carId + " expired before payment completed"));
+                    }
+                    reservation.confirm();
+                    return reservation;
+                });
+    }
 
-            paymentStrategy.pay(reservation.getTotalPrice());
-            return reservation;
-        });
+    // Runs once the charge is known to have succeeded; a declined charge needs no refund
+    private void refundIfCharged(CompletableFuture<Void> payment, PaymentStrategy paymentStrategy, double amount) {
+        payment.thenRunAsync(() -> paymentStrategy.refund(amount), paymentExecutor)
+                .exceptionally(failure -> {
+                    System.out.println("Refund of " + amount + " failed: " + failure);
+                    return null;
+                });
     }
 
     public void shutdown() {
-        executor.shutdown();
+        paymentExecutor.shutdown();
+        reaper.shutdown();
+    }
+}
+
+/* ===========================
+   BENCHMARK
+   =========================== */
+
+/**
+ * Booking throughput under simulated payment latency: the former design, where each
+ * booking held one of five pool threads for the whole payment, against the async
+ * pipeline. Runs in its own JVM, so its cars and bookings never reach the demo's system.
+ */
+class ReservationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        CarRentalSystem system = CarRentalSystem.getInstance();
+        System.out.println("Booking throughput with 20 ms payment latency:");
+        run(system, 250, 20);
+        system.shutdown();
+    }
+
+    static void run(CarRentalSystem system, int bookings, long latencyMillis) throws Exception {
+        Customer customer = new Customer("Benchmark", "BENCH");
+        LocalDate start = LocalDate.now().plusDays(30);
+        LocalDate end = start.plusDays(2);
+        PaymentStrategy payment = new SimulatedGatewayPayment(latencyMillis);
+        List<String> pooledCars = addCars(system, "pooled", bookings);
+        List<String> pipelinedCars = addCars(system, "pipelined", bookings);
+
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        long began = System.nanoTime();
+        List<Future<?>> pooled = new ArrayList<>();
+        for (String carId : pooledCars) {
+            pooled.add(pool.submit(() -> {
+                Car car = system.getCar(carId);
+                car.book(start, end);
+                payment.pay(new Reservation(car, customer, start, end).getTotalPrice());
+            }));
+        }
+        for (Future<?> booking : pooled) {
+            booking.get();
+        }
+        report("Pool of 5 threads", bookings, System.nanoTime() - began);
+        pool.shutdown();
+
+        began = System.nanoTime();
+        List<CompletableFuture<Reservation>> pipelined = new ArrayList<>();
+        for (String carId : pipelinedCars) {
+            pipelined.add(system.reserveCarAsync(carId, customer, start, end, payment));
+        }
+        CompletableFuture.allOf(pipelined.toArray(new CompletableFuture<?>[0])).join();
+        report("Async pipeline", bookings, System.nanoTime() - began);
+    }
+
+    private static List<String> addCars(CarRentalSystem system, String prefix, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = "bench-" + prefix + "-" + i;
+            system.addCar(new Car(id, "Bench", "Car", CarType.values()[i % CarType.values().length], 1000));
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static void report(String name, int bookings, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-18s %d bookings in %4d ms (%,.0f bookings/s)%n",
+                name, bookings, TimeUnit.NANOSECONDS.toMillis(nanos), bookings / seconds);
     }
 }
 
@@ -253,6 +1166,38 @@ public class CarRentalSystemDemo {
         Reservation reservation = reservationFuture.get();
         System.out.println("Reservation successful, amount paid.");
 
+        // The Camry is taken for the next three days, but free after that
+        SearchCriteria nextWeek = new SearchCriteria();
+        nextWeek.byCarType(CarType.SEDAN);
+        nextWeek.byAvailability(LocalDate.now().plusDays(7), LocalDate.now().plusDays(10));
+        System.out.println("Sedans free today: " + system.searchCars(criteria));
+        System.out.println("Sedans free next week: " + system.searchCars(nextWeek));
+
+        Reservation later = system.reserveCar("1", customer, reservation.getEnd(),
+                reservation.getEnd().plusDays(2), new UpiPayment()).get();
+        System.out.println("Back-to-back booking from " + later.getStart() + " to " + later.getEnd());
+
+        // Peak-time checkouts share one settlement call instead of paying one by one
+        System.out.println("\nTen concurrent checkouts with batched settlement:");
+        BatchingPayment batching = new BatchingPayment(new LocalSettlementBackend(), 50, 20);
+        List<CompletableFuture<Reservation>> checkouts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String carId = "fleet-" + i;
+            system.addCar(new Car(carId, "Maruti", "Swift", CarType.HATCHBACK, 800));
+            checkouts.add(system.reserveCarAsync(carId, customer, LocalDate.now(), LocalDate.now().plusDays(1), batching));
+        }
+        CompletableFuture.allOf(checkouts.toArray(new CompletableFuture<?>[0])).join();
+        batching.shutdown();
+
+        // Ten of the twelve hatchbacks are now out today, so today's price surges
+        system.addCar(new Car("fleet-10", "Maruti", "Swift", CarType.HATCHBACK, 800));
+        system.addCar(new Car("fleet-11", "Maruti", "Swift", CarType.HATCHBACK, 800));
+        LocalDate quiet = LocalDate.now().plusWeeks(4).with(DayOfWeek.TUESDAY);
+        System.out.printf("Hatchback for one day: %.0f today, %.0f on %s%n",
+                system.quote("fleet-10", LocalDate.now(), LocalDate.now().plusDays(1)),
+                system.quote("fleet-10", quiet, quiet.plusDays(1)), quiet);
+
+
         system.shutdown();
     }
 }
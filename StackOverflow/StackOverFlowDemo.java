@@ -1,14 +1,75 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class StackOverFlowDemo {
     public static void main(String[] args) {
@@ -21,29 +82,33 @@ public class StackOverFlowDemo {
 
         // 2. Alice posts a question
         System.out.println("--- Alice posts a question ---");
-        Tag javaTag = new Tag("java");
-        Tag designPatternsTag = new Tag("design-patterns");
+        Tag javaTag = Tag.of("java");
+        Tag designPatternsTag = Tag.of("design-patterns");
         Set<Tag> tags = Set.of(javaTag, designPatternsTag);
         Question question = service.postQuestion(alice.getId(), "How to implement Observer Pattern?", "Details about Observer Pattern...", tags);
-        printReputations(alice, bob, charlie);
+        printReputations(service, alice, bob, charlie);
 
         // 3. Bob and Charlie post answers
         System.out.println("\n--- Bob and Charlie post answers ---");
         Answer bobAnswer = service.postAnswer(bob.getId(), question.getId(), "You can use the java.util.Observer interface.");
         Answer charlieAnswer = service.postAnswer(charlie.getId(), question.getId(), "A better way is to create your own Observer interface.");
-        printReputations(alice, bob, charlie);
+        printReputations(service, alice, bob, charlie);
 
         // 4. Voting happens
         System.out.println("\n--- Voting Occurs ---");
         service.voteOnPost(alice.getId(), question.getId(), VoteType.UPVOTE); // Alice upvotes her own question
         service.voteOnPost(bob.getId(), charlieAnswer.getId(), VoteType.UPVOTE); // Bob upvotes Charlie's answer
         service.voteOnPost(alice.getId(), bobAnswer.getId(), VoteType.DOWNVOTE); // Alice downvotes Bob's answer
-        printReputations(alice, bob, charlie);
+        printReputations(service, alice, bob, charlie);
 
         // 5. Alice accepts Charlie's answer
         System.out.println("\n--- Alice accepts Charlie's answer ---");
         service.acceptAnswer(question.getId(), charlieAnswer.getId());
-        printReputations(alice, bob, charlie);
+        printReputations(service, alice, bob, charlie);
+        System.out.println("Leaders: " + service.getReputationLeaders(0, 3)
+                + ", Bob is #" + service.getReputationRank(bob.getId()));
+
+        System.out.println("Question page: " + service.viewQuestion(question.getId()));
 
         // 6. Search for questions
         System.out.println("\n--- (C) Combined Search: Questions by 'Alice' with tag 'java' ---");
@@ -53,9 +118,95 @@ public class StackOverFlowDemo {
         );
         List<Question> searchResults = service.searchQuestions(filtersC);
         searchResults.forEach(q -> System.out.println("  - Found: " + q.getTitle()));
+
+        System.out.println("\n--- Ranked keyword search: 'observer interface' ---");
+        service.searchByKeywords("observer interface", 0, 10)
+                .forEach(q -> System.out.println("  - Found: " + q.getTitle()));
+
+        System.out.println("\n--- Hot questions in 'java' ---");
+        service.getHotQuestions(javaTag, 5)
+                .forEach(q -> System.out.println("  - " + q.getTitle()));
+
+        System.out.println("\n--- Questions tagged 'Java' or 'spring' ---");
+        service.searchQuestionsWithAnyTag(Set.of(Tag.of("Java"), Tag.of("spring")))
+                .forEach(q -> System.out.println("  - Found: " + q.getTitle() + " " + q.getTags()));
+
+        // 7. Durable service: state is rebuilt from the event log after a restart
+        System.out.println("\n--- Recovering from the event log ---");
+        try {
+            Path dataDirectory = Files.createTempDirectory("stackoverflow");
+            try {
+                StackOverflowService durable = new StackOverflowService(dataDirectory);
+                User dave = durable.createUser("Dave");
+                User erin = durable.createUser("Erin");
+                Question persisted = durable.postQuestion(dave.getId(), "What is event sourcing?", "Rebuild state from events.", tags);
+                durable.postAnswer(erin.getId(), persisted.getId(), "Store every change as an event and replay it.");
+                durable.voteOnPost(erin.getId(), persisted.getId(), VoteType.UPVOTE);
+                durable.snapshot().join();
+                durable.voteOnPost(dave.getId(), persisted.getId(), VoteType.UPVOTE);
+                durable.close();
+
+                StackOverflowService restarted = new StackOverflowService(dataDirectory);
+                Question recovered = restarted.searchByKeywords("event sourcing", 0, 1).get(0);
+                System.out.println("  - Recovered: " + recovered.getTitle() + " with " + recovered.getAnswerCount()
+                        + " answer(s) and score " + recovered.getVoteCount()
+                        + "; Dave's reputation: " + restarted.getUser(dave.getId()).getReputation());
+                restarted.close();
+
+                recoverConcurrentWrites(dataDirectory, tags);
+            } finally {
+                deleteRecursively(dataDirectory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writers answer and upvote the newest question they can find, often one still being posted,
+    // then the log is replayed
+    private static void recoverConcurrentWrites(Path dataDirectory, Set<Tag> tags) {
+        StackOverflowService busy = new StackOverflowService(dataDirectory);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<Void>> rounds = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            User writer = busy.createUser("Writer " + w);
+            rounds.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 50; i++) {
+                    busy.postQuestion(writer.getId(), writer.getName() + " asks #" + i, "Body", tags);
+                    Question newest = busy.streamQuestions(List.of())
+                            .max(Comparator.comparingLong(Question::getId)).orElseThrow();
+                    busy.postAnswer(writer.getId(), newest.getId(), "Answer from " + writer.getName());
+                    busy.voteOnPost(writer.getId(), newest.getId(), VoteType.UPVOTE);
+                }
+            }, writers));
+        }
+        CompletableFuture.allOf(rounds.toArray(new CompletableFuture<?>[0])).join();
+        writers.shutdown();
+        String written = summarize(busy);
+        busy.close();
+
+        StackOverflowService restarted = new StackOverflowService(dataDirectory);
+        String recovered = summarize(restarted);
+        restarted.close();
+        System.out.println("  - Concurrent writers left " + written + "; recovered identically: " + written.equals(recovered));
+    }
+
+    private static String summarize(StackOverflowService service) {
+        List<Question> all = service.streamQuestions(List.of()).collect(Collectors.toList());
+        return all.size() + " questions, " + all.stream().mapToInt(Question::getAnswerCount).sum() + " answers, total score "
+                + all.stream().mapToInt(Question::getVoteCount).sum();
     }
 
-    private static void printReputations(User... users) {
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static void printReputations(StackOverflowService service, User... users) {
+        service.flushReputationUpdates();
         System.out.println("--- Current Reputations ---");
         for(User user : users) {
             System.out.printf("%s: %d\n", user.getName(), user.getReputation());
@@ -63,127 +214,623 @@ public class StackOverFlowDemo {
     }
 }
 
- class StackOverflowService {
+ class StackOverflowService implements QuestionIndexes {
     
-    private final Map<String, User> users = new ConcurrentHashMap<>();
-    private final Map<String, Question> questions = new ConcurrentHashMap<>();
-    private final Map<String, Answer> answers = new ConcurrentHashMap<>();
-    private final PostObserver reputationManager = new ReputationManager();
+    private final LongMap<User> users = new LongMap<>();
+    private final LongMap<Question> questions = new LongMap<>();
+    private final LongMap<Answer> answers = new LongMap<>();
+    private final ReputationLeaderboard reputationLeaderboard = new ReputationLeaderboard();
+    private final BatchingReputationObserver reputationManager =
+            new BatchingReputationObserver(new ReputationManager(), reputationLeaderboard::update);
+    private final TagIndex<Question> tagIndex = new TagIndex<>(Question::getId);
+    private final LongMap<List<Question>> questionsByAuthor = new LongMap<>();
+    private final QueryPlanner queryPlanner = new QueryPlanner(this);
+    private final KeywordIndex keywordIndex = new KeywordIndex();
+    private final HotQuestionsLeaderboard hotQuestions = new HotQuestionsLeaderboard();
+    private final QuestionViewCache questionViews = new QuestionViewCache(10_000);
+    private final EventLog eventLog;
+    // Writes share the read lock; sealing the log for a snapshot holds the write lock
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final ExecutorService snapshotWriter;
+    private CompletableFuture<Void> pendingSnapshot = CompletableFuture.completedFuture(null); // guarded by this
+
+    /** In-memory service; nothing survives a restart. */
+    public StackOverflowService() {
+        this.eventLog = null;
+        this.snapshotWriter = null;
+    }
+
+    /** Durable service: recovers from the event log in the directory, then appends to it. */
+    public StackOverflowService(Path dataDirectory) {
+        this(new EventLog(dataDirectory));
+    }
+
+    // A read-only log yields a throwaway replica, used to build snapshots
+    private StackOverflowService(EventLog eventLog) {
+        this.eventLog = eventLog;
+        this.snapshotWriter = eventLog.isReadOnly() ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recover();
+    }
 
     public User createUser(String name) {
         User user = new User(name);
-        users.put(user.getId(), user);
+        write(() -> {
+            log(EventLog.USER, String.valueOf(user.getId()), user.getName());
+            register(user);
+        });
         return user;
     }
 
-    public Question postQuestion(String userId, String title, String body, Set<Tag> tags) {
+    public Question postQuestion(long userId, String title, String body, Set<Tag> tags) {
         User author = users.get(userId);
         Question question = new Question(title, body, author, tags);
-        question.addObserver(reputationManager);
-        questions.put(question.getId(), question);
+        write(() -> {
+            log(EventLog.QUESTION, questionFields(question));
+            register(question);
+        });
         return question;
     }
 
-    public Answer postAnswer(String userId, String questionId, String body) {
+    public Answer postAnswer(long userId, long questionId, String body) {
         User author = users.get(userId);
         Question question = questions.get(questionId);
-        Answer answer = new Answer(body, author);
-        answer.addObserver(reputationManager);
-        question.addAnswer(answer);
-        answers.put(answer.getId(), answer);
+        Answer answer = new Answer(body, author, question);
+        write(() -> {
+            log(EventLog.ANSWER, answerFields(answer));
+            register(answer);
+        });
         return answer;
     }
 
-    public void voteOnPost(String userId, String postId, VoteType voteType) {
+    public void voteOnPost(long userId, long postId, VoteType voteType) {
         User user = users.get(userId);
         Post post = findPostById(postId);
-        post.vote(user, voteType);
+        write(() -> post.vote(user, voteType)); // the event log records it as a post event
+    }
+
+    /** Applies every queued reputation change before returning. */
+    public void flushReputationUpdates() {
+        reputationManager.flush();
     }
 
-    public void acceptAnswer(String questionId, String answerId) {
+    public void acceptAnswer(long questionId, long answerId) {
         Question question = questions.get(questionId);
         Answer answer = answers.get(answerId);
-        question.acceptAnswer(answer);
+        write(() -> question.acceptAnswer(answer));
     }
 
-    public List<Question> searchQuestions(List<SearchStrategy> strategies) {
-        List<Question> results = new ArrayList<>(questions.values());
+    // --- Registration: every index is updated here, for live writes and recovery alike ---
+    // Live creations are logged before they are registered: nothing can find an entity, and so
+    // log a vote, answer or accept against it, until its own record has taken a sequence number.
 
-        // Sequentially apply each filter strategy to the results of the previous one.
-        for (SearchStrategy strategy : strategies) {
-            results = strategy.filter(results);
+    private void register(User user) {
+        users.put(user.getId(), user);
+        reputationLeaderboard.update(List.of(user));
+    }
+
+    private void register(Question question) {
+        question.addObserver(reputationManager);
+        question.addObserver(hotQuestions);
+        question.addObserver(questionViews);
+        if (eventLog != null) {
+            question.addObserver(eventLog);
+        }
+        questions.put(question.getId(), question);
+        tagIndex.add(question, question.getTagBits());
+        questionsByAuthor.computeIfAbsent(question.getAuthor().getId(),
+                        id -> Collections.synchronizedList(new ArrayList<>()))
+                .add(question);
+        keywordIndex.addQuestion(question);
+        hotQuestions.track(question);
+    }
+
+    private void register(Answer answer) {
+        answer.addObserver(reputationManager);
+        answer.addObserver(hotQuestions);
+        answer.addObserver(questionViews);
+        if (eventLog != null) {
+            answer.addObserver(eventLog);
         }
+        answer.getQuestion().addAnswer(answer);
+        answers.put(answer.getId(), answer);
+        keywordIndex.addAnswer(answer.getQuestion(), answer);
+    }
 
-        return results;
+    // --- Persistence ---
+
+    private void write(Runnable mutation) {
+        snapshotLock.readLock().lock();
+        try {
+            mutation.run();
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        if (eventLog != null) {
+            eventLog.sync(); // durable before the caller sees it succeed
+            snapshotIfDue();
+        }
     }
 
-    public User getUser(String userId) {
-        return users.get(userId);
+    private void log(byte type, String... fields) {
+        if (eventLog != null) {
+            eventLog.append(type, fields);
+        }
+    }
+
+    private synchronized void snapshotIfDue() {
+        if (pendingSnapshot.isDone() && eventLog.snapshotDue()) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Seals the event log and compacts it into a snapshot on a background thread. Writers
+     * only wait while the current segment is closed: the snapshot is built by replaying the
+     * sealed log into a throwaway replica, never from live state, at the cost of holding a
+     * second copy of the state in memory meanwhile. The future completes once the snapshot
+     * is on disk and the segments it covers are deleted; a failed one is retried when the
+     * next snapshot falls due.
+     */
+    public synchronized CompletableFuture<Void> snapshot() {
+        if (snapshotWriter == null)
+            return CompletableFuture.completedFuture(null);
+        long covered;
+        snapshotLock.writeLock().lock();
+        try {
+            covered = eventLog.seal();
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        pendingSnapshot = CompletableFuture.runAsync(() -> compact(covered), snapshotWriter);
+        return pendingSnapshot;
+    }
+
+    private void compact(long covered) {
+        StackOverflowService replica = new StackOverflowService(eventLog.readView(covered));
+        try {
+            eventLog.writeSnapshot(covered, replica::writeState);
+        } finally {
+            replica.close();
+        }
+    }
+
+    private void writeState(EventLog.RecordSink sink) throws IOException {
+        reputationManager.flush();
+        for (User user : users.values()) {
+            String userId = String.valueOf(user.getId());
+            sink.write(EventLog.USER, userId, user.getName());
+            sink.write(EventLog.REPUTATION, userId, String.valueOf(user.getReputation()));
+        }
+        for (Question question : questions.values()) {
+            sink.write(EventLog.QUESTION, questionFields(question));
+            writeVotes(sink, question);
+            for (Answer answer : question.getAnswers()) {
+                sink.write(EventLog.ANSWER, answerFields(answer));
+                writeVotes(sink, answer);
+            }
+            if (question.getAcceptedAnswer() != null) {
+                sink.write(EventLog.ACCEPT, String.valueOf(question.getId()),
+                        String.valueOf(question.getAcceptedAnswer().getId()));
+            }
+        }
+    }
+
+    /** Waits for a pending snapshot, then stops the background threads and closes the log. */
+    public void close() {
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown();
+            try {
+                snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        reputationManager.shutdown();
+        if (eventLog != null) {
+            eventLog.close();
+        }
+    }
+
+    private static void writeVotes(EventLog.RecordSink sink, Post post) throws IOException {
+        for (Map.Entry<Long, VoteType> vote : post.getVoters().entrySet()) {
+            sink.write(EventLog.VOTE, String.valueOf(post.getId()), String.valueOf(vote.getKey()),
+                    vote.getValue().name());
+        }
+    }
+
+    private static String[] questionFields(Question question) {
+        List<String> fields = new ArrayList<>(List.of(String.valueOf(question.getId()),
+                String.valueOf(question.getAuthor().getId()), question.getTitle(), question.getBody()));
+        question.getTags().forEach(tag -> fields.add(tag.getName()));
+        return fields.toArray(new String[0]);
+    }
+
+    private static String[] answerFields(Answer answer) {
+        return new String[] {String.valueOf(answer.getId()), String.valueOf(answer.getQuestion().getId()),
+                String.valueOf(answer.getAuthor().getId()), answer.getBody()};
+    }
+
+    /**
+     * Loads the latest snapshot, then replays the log tail. Creations are replayed in
+     * order (they feed every index); votes and accepts are then replayed in parallel,
+     * partitioned by post id so each post still sees its own events in order.
+     */
+    private void recover() {
+        eventLog.loadSnapshot(record -> {
+            switch (record.getType()) {
+                case EventLog.VOTE:
+                    findPostById(record.id(0)).restoreVote(record.id(1), VoteType.valueOf(record.field(2)));
+                    break;
+                case EventLog.ACCEPT:
+                    questions.get(record.id(0)).restoreAcceptedAnswer(answers.get(record.id(1)));
+                    break;
+                case EventLog.REPUTATION:
+                    users.get(record.id(0)).restoreReputation(Integer.parseInt(record.field(1)));
+                    break;
+                default:
+                    applyCreation(record);
+            }
+        });
+        reputationLeaderboard.update(users.values());
+
+        List<EventLog.LogRecord> tail = eventLog.readTail();
+        int partitions = Runtime.getRuntime().availableProcessors();
+        List<List<EventLog.LogRecord>> byPost = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            byPost.add(new ArrayList<>());
+        }
+        for (EventLog.LogRecord record : tail) {
+            if (record.getType() == EventLog.VOTE || record.getType() == EventLog.ACCEPT) {
+                byPost.get(Math.floorMod(Long.hashCode(record.id(0)), partitions)).add(record);
+            } else {
+                applyCreation(record);
+            }
+        }
+
+        ExecutorService replayers = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Callable<Void>> jobs = new ArrayList<>();
+            for (List<EventLog.LogRecord> partition : byPost) {
+                jobs.add(() -> {
+                    partition.forEach(this::applyPostEvent);
+                    return null;
+                });
+            }
+            for (Future<Void> job : replayers.invokeAll(jobs)) {
+                job.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Recovery interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Recovery failed", e.getCause());
+        } finally {
+            replayers.shutdown();
+        }
+        reputationManager.flush();
+        eventLog.startAppending();
+    }
+
+    private void applyCreation(EventLog.LogRecord record) {
+        IdGenerator.getInstance().advancePast(record.id(0)); // ids minted after a restart stay unique
+        switch (record.getType()) {
+            case EventLog.USER:
+                register(new User(record.id(0), record.field(1)));
+                break;
+            case EventLog.QUESTION:
+                Set<Tag> tags = new LinkedHashSet<>();
+                for (int i = 4; i < record.size(); i++) {
+                    tags.add(Tag.of(record.field(i)));
+                }
+                register(new Question(record.id(0), record.field(2), record.field(3),
+                        users.get(record.id(1)), tags));
+                break;
+            case EventLog.ANSWER:
+                register(new Answer(record.id(0), record.field(3), users.get(record.id(2)),
+                        questions.get(record.id(1))));
+                break;
+            default:
+                throw new IllegalStateException("Unexpected record type " + record.getType());
+        }
     }
 
-    private Post findPostById(String postId) {
-        if (questions.containsKey(postId)) {
-            return questions.get(postId);
-        } else if (answers.containsKey(postId)) {
-            return answers.get(postId);
+    // Replays through the normal paths so reputation and rankings follow; the log ignores
+    // these events until startAppending()
+    private void applyPostEvent(EventLog.LogRecord record) {
+        if (record.getType() == EventLog.VOTE) {
+            findPostById(record.id(0)).vote(users.get(record.id(1)), VoteType.valueOf(record.field(2)));
+        } else {
+            questions.get(record.id(0)).acceptAnswer(answers.get(record.id(1)));
         }
+    }
+
+    /** The question page as shown to readers; served from cache until a post event changes it. */
+    public QuestionView viewQuestion(long questionId) {
+        Question question = questions.get(questionId);
+        if (question == null)
+            throw new IllegalArgumentException("Question not found");
+        return questionViews.get(question);
+    }
+
+    public List<Question> searchQuestions(List<SearchStrategy> strategies) {
+        return queryPlanner.execute(strategies).collect(Collectors.toList());
+    }
+
+    /**
+     * Questions ranked by BM25 relevance of their title, body and answers to the query.
+     * {@code page} is 0-based; a negative page or a non-positive page size is rejected.
+     */
+    public List<Question> searchByKeywords(String query, int page, int pageSize) {
+        return keywordIndex.search(query, page, pageSize);
+    }
+
+    /** 1-based position of the user by reputation, or -1 for an unknown user. */
+    public int getReputationRank(long userId) {
+        return reputationLeaderboard.rankOf(userId);
+    }
+
+    public List<RankedUser> getReputationLeaders(int offset, int limit) {
+        return reputationLeaderboard.page(offset, limit);
+    }
+
+    public List<Question> getHotQuestions(int limit) {
+        return hotQuestions.top(limit);
+    }
+
+    public List<Question> getHotQuestions(Tag tag, int limit) {
+        return hotQuestions.top(tag, limit);
+    }
+
+    /** Same as searchQuestions, but matches are produced on demand. */
+    public Stream<Question> streamQuestions(List<SearchStrategy> strategies) {
+        return queryPlanner.execute(strategies);
+    }
+
+    @Override
+    public int questionCount() {
+        return questions.size();
+    }
+
+    @Override
+    public Stream<Question> allQuestions() {
+        return questions.valueStream();
+    }
+
+    @Override
+    public int countWithTag(Tag tag) {
+        return tagIndex.count(tag);
+    }
+
+    @Override
+    public Stream<Question> questionsWithTag(Tag tag) {
+        return tagIndex.stream(tag);
+    }
+
+    @Override
+    public int countByAuthor(User author) {
+        List<Question> authored = questionsByAuthor.get(author.getId());
+        return authored == null ? 0 : authored.size();
+    }
 
-        throw new NoSuchElementException("Post not found");
+    // Author lists are append-only, so the questions present now can be read by index later
+    @Override
+    public Stream<Question> questionsByAuthor(User author) {
+        List<Question> authored = questionsByAuthor.get(author.getId());
+        if (authored == null)
+            return Stream.empty();
+        return IntStream.range(0, authored.size()).mapToObj(authored::get);
+    }
+
+    public List<Question> searchQuestionsWithAllTags(Set<Tag> tags) {
+        return tagIndex.matchAll(tags);
+    }
+
+    public List<Question> searchQuestionsWithAnyTag(Set<Tag> tags) {
+        return tagIndex.matchAny(tags);
+    }
+
+    public User getUser(long userId) {
+        return users.get(userId);
+    }
+
+    // The id says which kind of post it is, so only one map is probed
+    private Post findPostById(long postId) {
+        Post post = null;
+        switch (IdGenerator.kindOf(postId)) {
+            case QUESTION:
+                post = questions.get(postId);
+                break;
+            case ANSWER:
+                post = answers.get(postId);
+                break;
+            default:
+                break;
+        }
+        if (post == null)
+            throw new NoSuchElementException("Post not found");
+        return post;
     }
 }
 
 class User {
-    private final String id;
+    private final long id;
     private final String name;
     private final AtomicInteger reputation;
 
     public User(String name) {
-        this.id = UUID.randomUUID().toString();
+        this(IdGenerator.getInstance().nextId(EntityKind.USER), name);
+    }
+
+    User(long id, String name) {
+        this.id = id;
         this.name = name;
         this.reputation = new AtomicInteger(0);
     }
 
+    // Recovery only: sets the value captured in a snapshot
+    void restoreReputation(int reputation) {
+        this.reputation.set(reputation);
+    }
+
     public void updateReputation(int change) {
         this.reputation.addAndGet(change);
     }
 
-    public String getId() { return id; }
+    public long getId() { return id; }
     public String getName() { return name; }
     public int getReputation() { return reputation.get(); }
 }
 
 class Question extends Post {
     private final String title;
-    private final Set<Tag> tags;
-    private final List<Answer> answers = new ArrayList<>();
+    private final BitSet tagBits;
+    private final AnswerList answers = new AnswerList();
     private Answer acceptedAnswer;
 
     public Question(String title, String body, User author, Set<Tag> tags) {
-        super(UUID.randomUUID().toString(), body, author);
+        this(IdGenerator.getInstance().nextId(EntityKind.QUESTION), title, body, author, tags);
+    }
+
+    Question(long id, String title, String body, User author, Set<Tag> tags) {
+        super(id, body, author);
         this.title = title;
-        this.tags = tags;
+        this.tagBits = TagRegistry.getInstance().toBits(tags);
     }
 
-    public void addAnswer(Answer answer) { this.answers.add(answer); }
+    public void addAnswer(Answer answer) {
+        this.answers.append(answer);
+        notifyObservers(new Event(EventType.POST_ANSWER, answer.getAuthor(), this));
+    }
 
     public synchronized void acceptAnswer(Answer answer) {
-        if (!this.author.getId().equals(answer.getAuthor().getId()) && this.acceptedAnswer == null) {
+        if (this.author.getId() != answer.getAuthor().getId() && this.acceptedAnswer == null) {
             this.acceptedAnswer = answer;
             answer.setAccepted(true);
             notifyObservers(new Event(EventType.ACCEPT_ANSWER, answer.getAuthor(), answer));
         }
     }
 
+    // Recovery only: no events, reputation was captured in the snapshot
+    synchronized void restoreAcceptedAnswer(Answer answer) {
+        this.acceptedAnswer = answer;
+        answer.setAccepted(true);
+    }
+
+    public synchronized Answer getAcceptedAnswer() { return acceptedAnswer; }
+
     public String getTitle() { return title; }
-    public Set<Tag> getTags() { return tags; }
-    public List<Answer> getAnswers() { return answers; }
+    public Set<Tag> getTags() { return TagRegistry.getInstance().fromBits(tagBits); }
+    public boolean hasTag(Tag tag) { return tagBits.get(tag.getId()); }
+    BitSet getTagBits() { return tagBits; }
+    /** Snapshot of the answers, highest score first, ties in the order they were posted. */
+    public List<Answer> getAnswers() { return answers.snapshot(); }
+    public int getAnswerCount() { return answers.size(); }
+
+    void answerScoreChanged(Answer answer) { answers.reposition(answer); }
+}
+
+/**
+ * Answers of one question kept sorted by score without locks. Each answer owns one
+ * entry in a skip list ordered by (score desc, posting order); a vote swaps that
+ * entry for one at the new score with a CAS. The replacement is inserted before the
+ * CAS publishes it, so every published entry is already in the list and the thread
+ * that replaced it is the one that removes it. Reads iterate the skip list and may
+ * briefly see a moving answer at both positions, which snapshot() de-duplicates.
+ */
+class AnswerList {
+    private static final AtomicLong versions = new AtomicLong();
+
+    private final ConcurrentSkipListSet<Entry> ranked = new ConcurrentSkipListSet<>();
+    private final Map<Answer, AtomicReference<Entry>> positions = new ConcurrentHashMap<>();
+    private final AtomicLong postingOrder = new AtomicLong();
+
+    public void append(Answer answer) {
+        Entry entry = new Entry(answer, answer.getVoteCount(), postingOrder.getAndIncrement());
+        ranked.add(entry);
+        positions.put(answer, new AtomicReference<>(entry));
+        reposition(answer); // catch votes cast before the entry was published
+    }
+
+    /** Moves the answer to its current score; retries until the stored score is current. */
+    public void reposition(Answer answer) {
+        AtomicReference<Entry> position = positions.get(answer);
+        if (position == null)
+            return; // not appended yet; append() reads the score itself
+        while (true) {
+            Entry current = position.get();
+            int score = answer.getVoteCount();
+            if (current.score == score)
+                return;
+            Entry moved = new Entry(answer, score, current.postingOrder);
+            ranked.add(moved);
+            if (position.compareAndSet(current, moved)) {
+                ranked.remove(current);
+            } else {
+                ranked.remove(moved);
+            }
+        }
+    }
+
+    public List<Answer> snapshot() {
+        Set<Answer> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Answer> result = new ArrayList<>(positions.size());
+        for (Entry entry : ranked) {
+            if (seen.add(entry.answer)) {
+                result.add(entry.answer);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final Answer answer;
+        final int score;
+        final long postingOrder;
+        final long version = versions.getAndIncrement(); // keeps racing entries distinct
+
+        Entry(Answer answer, int score, long postingOrder) {
+            this.answer = answer;
+            this.score = score;
+            this.postingOrder = postingOrder;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byScore = Integer.compare(other.score, score);
+            if (byScore != 0)
+                return byScore;
+            int byOrder = Long.compare(postingOrder, other.postingOrder);
+            return byOrder != 0 ? byOrder : Long.compare(version, other.version);
+        }
+    }
 }
 
 class Answer extends Post {
+    private final Question question;
     private boolean isAccepted = false;
 
-    public Answer(String body, User author) {
-        super(UUID.randomUUID().toString(), body, author);
+    public Answer(String body, User author, Question question) {
+        this(IdGenerator.getInstance().nextId(EntityKind.ANSWER), body, author, question);
+    }
+
+    Answer(long id, String body, User author, Question question) {
+        super(id, body, author);
+        this.question = question;
+    }
+
+    public Question getQuestion() { return question; }
+
+    @Override
+    protected void scoreChanged() {
+        question.answerScoreChanged(this);
     }
 
     public void setAccepted(boolean accepted) {
@@ -194,18 +841,18 @@ class Answer extends Post {
 }
 
 abstract class Content {
-    protected final String id;
+    protected final long id;
     protected final String body;
     protected final User author;
     protected final LocalDateTime creationTime;
 
-    public Content(String id, String body, User author) {
+    public Content(long id, String body, User author) {
         this.id = id;
         this.body = body;
         this.author = author;
         this.creationTime = LocalDateTime.now();
     }
-    public String getId() { return id; }
+    public long getId() { return id; }
     public String getBody() { return body; }
     public User getAuthor() { return author; }
 }
@@ -214,24 +861,36 @@ class Event {
     private final EventType type;
     private final User actor;        // user who performed the action
     private final Post targetPost;   // post being acted on
+    private final int scoreChange;   // votes only: +-1 for a new vote, +-2 for a flipped one
 
     public Event(EventType type, User actor, Post targetPost) {
+        this(type, actor, targetPost, 0);
+    }
+
+    public Event(EventType type, User actor, Post targetPost, int scoreChange) {
         this.type = type;
         this.actor = actor;
         this.targetPost = targetPost;
+        this.scoreChange = scoreChange;
     }
 
     public EventType getType() { return type; }
     public User getActor() { return actor; }
     public Post getTargetPost() { return targetPost; }
+    public int getScoreChange() { return scoreChange; }
 }
 abstract class Post extends Content {
-    private final AtomicInteger voteCount = new AtomicInteger(0);
-    private final Map<String, VoteType> voters = new ConcurrentHashMap<>();
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Post, LongMap> VOTERS =
+            AtomicReferenceFieldUpdater.newUpdater(Post.class, LongMap.class, "voters");
+    // Striped counter, so concurrent voters on a hot post don't contend on one CAS
+    private final LongAdder voteCount = new LongAdder();
+    // Created on the first vote, as most posts get few or none
+    private volatile LongMap<VoteType> voters;
     private final List<Comment> comments = new CopyOnWriteArrayList<>();
     private final List<PostObserver> observers = new CopyOnWriteArrayList<>();
 
-    public Post(String id, String body, User author) {
+    public Post(long id, String body, User author) {
         super(id, body, author);
     }
 
@@ -243,20 +902,21 @@ abstract class Post extends Content {
         observers.forEach(o -> o.onPostEvent(event));
     }
 
-    public synchronized void vote(User user, VoteType voteType) {
-        String userId = user.getId();
-        if (voters.get(userId) == voteType)
+    // Lock-free: the atomic put tells each voter what vote, if any, it replaced
+    public void vote(User user, VoteType voteType) {
+        VoteType previous = voters().put(user.getId(), voteType);
+        if (previous == voteType)
             return; // Already voted
 
         int scoreChange = 0;
-        if (voters.containsKey(userId)) { // User is changing their vote
+        if (previous != null) { // User is changing their vote
             scoreChange = (voteType == VoteType.UPVOTE) ? 2 : -2;
         } else { // New vote
             scoreChange = (voteType == VoteType.UPVOTE) ? 1 : -1;
         }
 
-        voters.put(userId, voteType);
-        voteCount.addAndGet(scoreChange);
+        voteCount.add(scoreChange);
+        scoreChanged();
 
         EventType eventType = EventType.UPVOTE_QUESTION;
 
@@ -266,124 +926,2051 @@ abstract class Post extends Content {
             eventType = (voteType == VoteType.UPVOTE ? EventType.UPVOTE_ANSWER : EventType.DOWNVOTE_ANSWER);
         }
 
-        notifyObservers(new Event(eventType, user, this));
+        notifyObservers(new Event(eventType, user, this, scoreChange));
+    }
+
+    public int getVoteCount() { return voteCount.intValue(); }
+
+    /** Copy of the votes cast, keyed by voter id. */
+    public Map<Long, VoteType> getVoters() {
+        Map<Long, VoteType> copy = new HashMap<>();
+        LongMap<VoteType> current = voters;
+        if (current != null) {
+            current.forEach(copy::put);
+        }
+        return copy;
+    }
+
+    public List<Comment> getComments() { return Collections.unmodifiableList(comments); }
+
+    // Recovery only: records a vote from a snapshot without raising events
+    void restoreVote(long userId, VoteType voteType) {
+        voters().put(userId, voteType);
+        voteCount.add(voteType == VoteType.UPVOTE ? 1 : -1);
+        scoreChanged();
+    }
+
+    // Called after every change to the score
+    protected void scoreChanged() {
+    }
+
+    // Lock-free lazy creation: racing first voters agree on one map through the CAS
+    private LongMap<VoteType> voters() {
+        LongMap<VoteType> current = voters;
+        if (current == null) {
+            VOTERS.compareAndSet(this, null, new LongMap<>(1));
+            current = voters;
+        }
+        return current;
     }
 }
 
 class Comment extends Content {
     public Comment(String body, User author) {
-        super(UUID.randomUUID().toString(), body, author);
+        super(IdGenerator.getInstance().nextId(EntityKind.COMMENT), body, author);
     }
 }
 
-class Tag {
-    private final String name;
+enum EntityKind {
+    USER, QUESTION, ANSWER, COMMENT
+}
 
-    public Tag(String name) { this.name = name; }
+/**
+ * Snowflake-style 64-bit ids: 41 bits of milliseconds since 2024-01-01, a 12-bit
+ * sequence within the millisecond, 8 bits of node id and 2 bits of entity kind, so
+ * the kind of any id can be read without a lookup. Ids from one generator strictly
+ * increase, also if the clock steps back; when a millisecond's 4096 ids run out the
+ * sequence carries into the next millisecond.
+ */
+class IdGenerator {
+    private static final long EPOCH_MILLIS = 1_704_067_200_000L;
+    private static final int KIND_BITS = 2;
+    private static final int NODE_BITS = 8;
+    private static final int STAMP_SHIFT = KIND_BITS + NODE_BITS;
+    private static final int SEQUENCE_BITS = 12;
+    private static final EntityKind[] KINDS = EntityKind.values();
+    private static final IdGenerator INSTANCE = new IdGenerator(0);
+
+    private final long node;
+    // Millis since the epoch and sequence of the last id, packed as (millis << 12) | sequence
+    private final AtomicLong lastStamp = new AtomicLong();
+
+    IdGenerator(int node) {
+        if (node < 0 || node >= 1 << NODE_BITS)
+            throw new IllegalArgumentException("Node id must fit in " + NODE_BITS + " bits");
+        this.node = node;
+    }
 
-    public String getName() { return name; }
-}
+    public static IdGenerator getInstance() {
+        return INSTANCE;
+    }
 
-enum VoteType {
-    UPVOTE, DOWNVOTE
-}
+    public long nextId(EntityKind kind) {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long stamp = lastStamp.accumulateAndGet(now, (last, fresh) -> Math.max(last + 1, fresh));
+        return stamp << STAMP_SHIFT | node << KIND_BITS | kind.ordinal();
+    }
 
-enum EventType {
-    UPVOTE_QUESTION,
-    DOWNVOTE_QUESTION,
-    UPVOTE_ANSWER,
-    DOWNVOTE_ANSWER,
-    ACCEPT_ANSWER
-}
-//======Oberser pattern =====
+    public static EntityKind kindOf(long id) {
+        return KINDS[(int) (id & ((1 << KIND_BITS) - 1))];
+    }
 
-interface PostObserver {
-    void onPostEvent(Event event);
+    /** Ensures every later id is greater than the given one, e.g. one read back from storage. */
+    public void advancePast(long id) {
+        lastStamp.accumulateAndGet(id >>> STAMP_SHIFT, Math::max);
+    }
 }
 
-class ReputationManager implements PostObserver {
-    private static final int QUESTION_UPVOTE_REP = 5;
-    private static final int ANSWER_UPVOTE_REP = 10;
-    private static final int ACCEPTED_ANSWER_REP = 15;
-    private static final int DOWNVOTE_REP_PENALTY = -1; // Penalty for the voter
-    private static final int POST_DOWNVOTED_REP_PENALTY = -2; // Penalty for the post author
+/**
+ * Concurrent map keyed by primitive longs, so lookups hash a long rather than a string
+ * and entries hold no boxed key. Keys are spread over lock stripes; each stripe is an
+ * open-addressing table with linear probing and backward-shift deletion. Writes take
+ * the stripe's write lock, reads are optimistic and only lock when a write overlaps
+ * them. Null values are not allowed.
+ */
+class LongMap<V> {
+    private final Stripe<V>[] stripes;
+    private final int stripeMask;
+
+    public LongMap() {
+        this(16);
+    }
 
-    @Override
-    public void onPostEvent(Event event) {
-        User postAuthor = event.getTargetPost().getAuthor();
-        switch (event.getType()) {
-            case UPVOTE_QUESTION:
-                postAuthor.updateReputation(QUESTION_UPVOTE_REP);
-                break;
-            case DOWNVOTE_QUESTION:
-                postAuthor.updateReputation(DOWNVOTE_REP_PENALTY);
-                event.getActor().updateReputation(POST_DOWNVOTED_REP_PENALTY); // voter penalty
-                break;
-            case UPVOTE_ANSWER:
-                postAuthor.updateReputation(ANSWER_UPVOTE_REP);
-                break;
-            case DOWNVOTE_ANSWER:
-                postAuthor.updateReputation(DOWNVOTE_REP_PENALTY);
-                event.getActor().updateReputation(POST_DOWNVOTED_REP_PENALTY);
-                break;
-            case ACCEPT_ANSWER:
-                postAuthor.updateReputation(ACCEPTED_ANSWER_REP);
-                break;
+    public LongMap(int concurrency) {
+        int count = 1;
+        while (count < concurrency) {
+            count <<= 1;
+        }
+        @SuppressWarnings("unchecked")
+        Stripe<V>[] stripes = (Stripe<V>[]) new Stripe<?>[count];
+        this.stripes = stripes;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
         }
+        this.stripeMask = count - 1;
     }
-}
 
+    public V get(long key) {
+        long hash = spread(key);
+        return stripeFor(hash).get(key, hash);
+    }
 
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
 
-//======= Search Strategies =======
+    /** Returns the previous value, or null. */
+    public V put(long key, V value) {
+        long hash = spread(key);
+        return stripeFor(hash).put(key, hash, Objects.requireNonNull(value), false);
+    }
 
-interface SearchStrategy {
-    List<Question> filter(List<Question> questions);
-}
+    public V putIfAbsent(long key, V value) {
+        long hash = spread(key);
+        return stripeFor(hash).put(key, hash, Objects.requireNonNull(value), true);
+    }
 
-class KeywordSearchStrategy implements SearchStrategy {
-    private final String keyword;
+    /** Like ConcurrentHashMap.computeIfAbsent: the mapping runs at most once, under the stripe lock. */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mapping) {
+        long hash = spread(key);
+        Stripe<V> stripe = stripeFor(hash);
+        V value = stripe.get(key, hash);
+        return value != null ? value : stripe.computeIfAbsent(key, hash, mapping);
+    }
 
-    public KeywordSearchStrategy(String keyword) {
-        this.keyword = keyword.toLowerCase();
+    public V remove(long key) {
+        long hash = spread(key);
+        return stripeFor(hash).remove(key, hash, null);
     }
 
-    @Override
-    public List<Question> filter(List<Question> questions) {
-        return questions.stream()
-                .filter(q -> q.getTitle().toLowerCase().contains(keyword) ||
-                        q.getBody().toLowerCase().contains(keyword))
-                .collect(Collectors.toList());
+    /** Removes the entry only if it still maps to this very value. */
+    public boolean remove(long key, V value) {
+        long hash = spread(key);
+        return stripeFor(hash).remove(key, hash, Objects.requireNonNull(value)) != null;
     }
-}
 
-class TagSearchStrategy implements SearchStrategy {
-    private final Tag tag;
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
 
-    public TagSearchStrategy(Tag tag) {
-        this.tag = tag;
+    /** Snapshot of the values, one stripe at a time. */
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        forEach((key, value) -> values.add(value));
+        return values;
     }
 
-    @Override
-    public List<Question> filter(List<Question> questions) {
-        return questions.stream()
-                .filter(q -> q.getTags().stream()
-                        .anyMatch(t -> t.getName().equalsIgnoreCase(tag.getName())))
-                .collect(Collectors.toList());
+    /** Lazy version of {@link #values}: each stripe is copied only when the stream reaches it. */
+    public Stream<V> valueStream() {
+        return Arrays.stream(stripes).flatMap(stripe -> {
+            List<V> values = new ArrayList<>();
+            stripe.forEach((key, value) -> values.add(value));
+            return values.stream();
+        });
     }
-}
 
-class UserSearchStrategy implements SearchStrategy {
-    private final User user;
+    /** Visits every entry; the action runs under a stripe's read lock and must not write to this map. */
+    public void forEach(EntryConsumer<? super V> action) {
+        for (Stripe<V> stripe : stripes) {
+            stripe.forEach(action);
+        }
+    }
 
-    public UserSearchStrategy(User user) {
-        this.user = user;
+    interface EntryConsumer<V> {
+        void accept(long key, V value);
     }
 
-    @Override
-    public List<Question> filter(List<Question> questions) {
-        return questions.stream()
-                .filter(q -> q.getAuthor().getId().equals(user.getId()))
+    // Murmur3 finalizer: the high bits pick the stripe, the low bits the slot
+    private static long spread(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    private Stripe<V> stripeFor(long hash) {
+        return stripes[(int) (hash >>> 32) & stripeMask];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final class Stripe<V> {
+        private final StampedLock lock = new StampedLock();
+        private long[] keys = new long[2];
+        private Object[] values = new Object[2]; // null marks a free slot
+        private int size;
+
+        V get(long key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            V value = find(key, hash);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    value = find(key, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return value;
+        }
+
+        // Also runs unlocked during a write, so every index is bounded by the arrays it read
+        private V find(long key, long hash) {
+            long[] k = keys;
+            Object[] v = values;
+            int length = Math.min(k.length, v.length);
+            int mask = length - 1;
+            for (int i = (int) hash & mask, probes = 0; probes < length; i = (i + 1) & mask, probes++) {
+                Object value = v[i];
+                if (value == null)
+                    return null;
+                if (k[i] == key)
+                    return (V) value;
+            }
+            return null;
+        }
+
+        V put(long key, long hash, V value, boolean onlyIfAbsent) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotOf(key, hash);
+                if (slot >= 0) {
+                    V old = (V) values[slot];
+                    if (!onlyIfAbsent) {
+                        values[slot] = value;
+                    }
+                    return old;
+                }
+                insert(key, hash, value);
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        V computeIfAbsent(long key, long hash, LongFunction<? extends V> mapping) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotOf(key, hash);
+                if (slot >= 0)
+                    return (V) values[slot];
+                V value = mapping.apply(key);
+                if (value != null) {
+                    insert(key, hash, value);
+                }
+                return value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // A non-null expected value makes the removal conditional on identity
+        V remove(long key, long hash, V expected) {
+            long stamp = lock.writeLock();
+            try {
+                int gap = slotOf(key, hash);
+                if (gap < 0 || (expected != null && values[gap] != expected))
+                    return null;
+                V old = (V) values[gap];
+                // Pull later entries of the probe run back over the gap, unless that would move them before their home slot
+                int mask = keys.length - 1;
+                for (int i = (gap + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+                    int home = (int) spread(keys[i]) & mask;
+                    boolean staysPut = gap < i ? home > gap && home <= i : home > gap || home <= i;
+                    if (!staysPut) {
+                        keys[gap] = keys[i];
+                        values[gap] = values[i];
+                        gap = i;
+                    }
+                }
+                values[gap] = null;
+                size--;
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void forEach(EntryConsumer<? super V> action) {
+            long stamp = lock.readLock();
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        action.accept(keys[i], (V) values[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private int slotOf(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key)
+                    return i;
+            }
+            return -1;
+        }
+
+        // Caller holds the write lock and knows the key is absent; keeps the load under 3/4
+        private void insert(long key, long hash, V value) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                long[] oldKeys = keys;
+                Object[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new Object[oldValues.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldValues[i] != null) {
+                        place(oldKeys[i], spread(oldKeys[i]), oldValues[i]);
+                    }
+                }
+            }
+            place(key, hash, value);
+            size++;
+        }
+
+        private void place(long key, long hash, Object value) {
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+    }
+}
+
+class Tag {
+    private final int id;
+    private final String name;
+
+    // Use Tag.of so every name maps to one shared instance
+    Tag(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public static Tag of(String name) { return TagRegistry.getInstance().intern(name); }
+
+    public int getId() { return id; }
+    public String getName() { return name; }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Tag && ((Tag) o).id == id);
+    }
+
+    @Override
+    public int hashCode() { return Integer.hashCode(id); }
+
+    @Override
+    public String toString() { return name; }
+}
+
+/**
+ * Global tag dictionary: case-folded name to one interned Tag with a dense int id.
+ * Dense ids let entities keep their tags as a small BitSet.
+ */
+class TagRegistry {
+    private static final TagRegistry INSTANCE = new TagRegistry();
+
+    private final Map<String, Tag> byName = new ConcurrentHashMap<>();
+    private final List<Tag> byId = new CopyOnWriteArrayList<>();
+
+    private TagRegistry() {}
+
+    public static TagRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public Tag intern(String name) {
+        String key = name.trim().toLowerCase(Locale.ROOT);
+        Tag tag = byName.get(key);
+        return tag != null ? tag : register(key);
+    }
+
+    public Tag get(int id) {
+        return byId.get(id);
+    }
+
+    public BitSet toBits(Collection<Tag> tags) {
+        BitSet bits = new BitSet();
+        for (Tag tag : tags) {
+            bits.set(tag.getId());
+        }
+        return bits;
+    }
+
+    public Set<Tag> fromBits(BitSet bits) {
+        Set<Tag> tags = new LinkedHashSet<>();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            tags.add(byId.get(id));
+        }
+        return tags;
+    }
+
+    private synchronized Tag register(String key) {
+        Tag tag = byName.get(key);
+        if (tag == null) {
+            tag = new Tag(byId.size(), key);
+            byId.add(tag);
+            byName.put(key, tag);
+        }
+        return tag;
+    }
+}
+
+/**
+ * Tag to entity posting index. Each entity gets a dense ordinal and each tag a BitSet of
+ * ordinals, so AND/OR filters over several tags are word-wise bit operations.
+ */
+class TagIndex<T> {
+    private final ToLongFunction<T> idOf;
+    private final LongMap<Integer> ordinals = new LongMap<>(1); // guarded by lock
+    private final List<T> entities = new ArrayList<>();
+    private final List<BitSet> postings = new ArrayList<>(); // indexed by tag id
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public TagIndex(ToLongFunction<T> idOf) {
+        this.idOf = idOf;
+    }
+
+    public void add(T entity, BitSet tagBits) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(idOf.applyAsLong(entity));
+            if (ordinal == null) {
+                ordinal = entities.size();
+                ordinals.put(idOf.applyAsLong(entity), ordinal);
+                entities.add(entity);
+            } else {
+                entities.set(ordinal, entity);
+            }
+            for (int tagId = tagBits.nextSetBit(0); tagId >= 0; tagId = tagBits.nextSetBit(tagId + 1)) {
+                while (postings.size() <= tagId) {
+                    postings.add(new BitSet());
+                }
+                postings.get(tagId).set(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(T entity, BitSet tagBits) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(idOf.applyAsLong(entity));
+            if (ordinal == null)
+                return;
+            entities.set(ordinal, null);
+            for (int tagId = tagBits.nextSetBit(0); tagId >= 0; tagId = tagBits.nextSetBit(tagId + 1)) {
+                postings.get(tagId).clear(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Entities carrying every one of the tags. */
+    public List<T> matchAll(Collection<Tag> tags) {
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            for (Tag tag : tags) {
+                BitSet posting = postingOf(tag);
+                if (posting == null)
+                    return new ArrayList<>();
+                if (result == null) {
+                    result = (BitSet) posting.clone();
+                } else {
+                    result.and(posting);
+                }
+            }
+            return result == null ? new ArrayList<>() : collect(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Entities carrying at least one of the tags. */
+    public List<T> matchAny(Collection<Tag> tags) {
+        lock.readLock().lock();
+        try {
+            BitSet result = new BitSet();
+            for (Tag tag : tags) {
+                BitSet posting = postingOf(tag);
+                if (posting != null) {
+                    result.or(posting);
+                }
+            }
+            return collect(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Number of entities carrying the tag; a popcount, nothing is collected. */
+    public int count(Tag tag) {
+        lock.readLock().lock();
+        try {
+            BitSet posting = postingOf(tag);
+            return posting == null ? 0 : posting.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Entities carrying the tag, produced lazily. Only the posting bits are copied up front;
+     * each entity is looked up as the stream reaches it and skipped if removed by then.
+     */
+    public Stream<T> stream(Tag tag) {
+        BitSet ordinalBits;
+        lock.readLock().lock();
+        try {
+            BitSet posting = postingOf(tag);
+            if (posting == null)
+                return Stream.empty();
+            ordinalBits = (BitSet) posting.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ordinalBits.stream().mapToObj(this::entityAt).filter(Objects::nonNull);
+    }
+
+    private T entityAt(int ordinal) {
+        lock.readLock().lock();
+        try {
+            return entities.get(ordinal);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet postingOf(Tag tag) {
+        return tag.getId() < postings.size() ? postings.get(tag.getId()) : null;
+    }
+
+    private List<T> collect(BitSet ordinalBits) {
+        List<T> result = new ArrayList<>(ordinalBits.cardinality());
+        for (int ordinal = ordinalBits.nextSetBit(0); ordinal >= 0; ordinal = ordinalBits.nextSetBit(ordinal + 1)) {
+            result.add(entities.get(ordinal));
+        }
+        return result;
+    }
+}
+
+enum VoteType {
+    UPVOTE, DOWNVOTE
+}
+
+enum EventType {
+    UPVOTE_QUESTION,
+    DOWNVOTE_QUESTION,
+    UPVOTE_ANSWER,
+    DOWNVOTE_ANSWER,
+    ACCEPT_ANSWER,
+    POST_ANSWER
+}
+//======Oberser pattern =====
+
+interface PostObserver {
+    void onPostEvent(Event event);
+}
+
+class ReputationManager implements PostObserver {
+    private static final int QUESTION_UPVOTE_REP = 5;
+    private static final int ANSWER_UPVOTE_REP = 10;
+    private static final int ACCEPTED_ANSWER_REP = 15;
+    private static final int DOWNVOTE_REP_PENALTY = -1; // Penalty for the voter
+    private static final int POST_DOWNVOTED_REP_PENALTY = -2; // Penalty for the post author
+
+    @Override
+    public void onPostEvent(Event event) {
+        forEachChange(event, User::updateReputation);
+    }
+
+    /** Reports the reputation changes an event causes without applying them. */
+    public void forEachChange(Event event, BiConsumer<User, Integer> change) {
+        User postAuthor = event.getTargetPost().getAuthor();
+        switch (event.getType()) {
+            case UPVOTE_QUESTION:
+                change.accept(postAuthor, QUESTION_UPVOTE_REP);
+                break;
+            case DOWNVOTE_QUESTION:
+                change.accept(postAuthor, DOWNVOTE_REP_PENALTY);
+                change.accept(event.getActor(), POST_DOWNVOTED_REP_PENALTY); // voter penalty
+                break;
+            case UPVOTE_ANSWER:
+                change.accept(postAuthor, ANSWER_UPVOTE_REP);
+                break;
+            case DOWNVOTE_ANSWER:
+                change.accept(postAuthor, DOWNVOTE_REP_PENALTY);
+                change.accept(event.getActor(), POST_DOWNVOTED_REP_PENALTY);
+                break;
+            case ACCEPT_ANSWER:
+                change.accept(postAuthor, ACCEPTED_ANSWER_REP);
+                break;
+        }
+    }
+}
+
+/**
+ * Asynchronous front for ReputationManager. Voting threads only enqueue the reputation
+ * changes an event causes; a background thread drains them in batches, sums the changes
+ * per user and applies one update per user per batch, then reports the touched users.
+ */
+class BatchingReputationObserver implements PostObserver {
+    private static final int MAX_BATCH_SIZE = 1_024;
+
+    private final ReputationManager rules;
+    private final Consumer<Collection<User>> onApplied;
+    private final Queue<ReputationChange> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final ExecutorService applier = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reputation-applier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BatchingReputationObserver(ReputationManager rules, Consumer<Collection<User>> onApplied) {
+        this.rules = rules;
+        this.onApplied = onApplied;
+    }
+
+    @Override
+    public void onPostEvent(Event event) {
+        rules.forEachChange(event, (user, change) -> pending.offer(new ReputationChange(user, change)));
+        if (drainScheduled.compareAndSet(false, true)) {
+            applier.execute(() -> {
+                drainScheduled.set(false);
+                drain();
+            });
+        }
+    }
+
+    /** Drains on the calling thread, so every change queued so far is visible on return. */
+    public void flush() {
+        drain();
+    }
+
+    /** Stops the background applier after applying everything queued. */
+    public void shutdown() {
+        applier.shutdown();
+        drain();
+    }
+
+    private synchronized void drain() {
+        while (!pending.isEmpty()) {
+            Map<User, Integer> totals = new HashMap<>();
+            ReputationChange change;
+            for (int i = 0; i < MAX_BATCH_SIZE && (change = pending.poll()) != null; i++) {
+                totals.merge(change.user, change.amount, Integer::sum);
+            }
+            totals.forEach(User::updateReputation);
+            onApplied.accept(totals.keySet());
+        }
+    }
+
+    private static class ReputationChange {
+        final User user;
+        final int amount;
+
+        ReputationChange(User user, int amount) {
+            this.user = user;
+            this.amount = amount;
+        }
+    }
+}
+
+
+
+/**
+ * Continuously maintained "hot questions" ranking, overall and per tag.
+ * Vote and answer events add weight to a question using forward decay: an event at time t
+ * is worth weight * e^((t - epoch) / DECAY), so older activity fades relative to newer
+ * activity without ever rescoring idle questions. Rankings live in concurrent skip lists,
+ * which readers iterate without locking; the epoch is moved forward (rescaling every score
+ * once) before the exponent can overflow.
+ */
+class HotQuestionsLeaderboard implements PostObserver {
+    private static final double DECAY_MILLIS = TimeUnit.HOURS.toMillis(12);
+    private static final double MAX_EXPONENT = 500;
+    private static final double NEW_QUESTION_WEIGHT = 1.0;
+    private static final double QUESTION_VOTE_WEIGHT = 1.0;
+    private static final double ANSWER_VOTE_WEIGHT = 0.5;
+    private static final double NEW_ANSWER_WEIGHT = 2.0;
+    private static final double ACCEPTED_ANSWER_WEIGHT = 1.0;
+
+    private static final Comparator<HotEntry> HOTTEST_FIRST = Comparator.<HotEntry>comparingDouble(e -> -e.score)
+            .thenComparingLong(e -> e.question.getId());
+
+    private volatile Rankings rankings = new Rankings(System.currentTimeMillis());
+    // Score updates share the read lock; only rebasing the epoch takes the write lock
+    private final ReadWriteLock rebaseLock = new ReentrantReadWriteLock();
+
+    public void track(Question question) {
+        bump(question, NEW_QUESTION_WEIGHT);
+    }
+
+    @Override
+    public void onPostEvent(Event event) {
+        Post post = event.getTargetPost();
+        switch (event.getType()) {
+            // Weighted by the score change, so a flipped vote moves the question twice as far
+            case UPVOTE_QUESTION:
+            case DOWNVOTE_QUESTION:
+                bump((Question) post, QUESTION_VOTE_WEIGHT * event.getScoreChange());
+                break;
+            case UPVOTE_ANSWER:
+            case DOWNVOTE_ANSWER:
+                bump(((Answer) post).getQuestion(), ANSWER_VOTE_WEIGHT * event.getScoreChange());
+                break;
+            case POST_ANSWER:
+                bump((Question) post, NEW_ANSWER_WEIGHT);
+                break;
+            case ACCEPT_ANSWER:
+                bump(((Answer) post).getQuestion(), ACCEPTED_ANSWER_WEIGHT);
+                break;
+        }
+    }
+
+    public List<Question> top(int limit) {
+        return top(rankings.all, limit);
+    }
+
+    public List<Question> top(Tag tag, int limit) {
+        NavigableSet<HotEntry> ranking = rankings.byTag.get(tag.getId());
+        return ranking == null ? new ArrayList<>() : top(ranking, limit);
+    }
+
+    private static List<Question> top(NavigableSet<HotEntry> ranking, int limit) {
+        // A question mid-replace can appear twice for a moment
+        return ranking.stream()
+                .map(e -> e.question)
+                .distinct()
+                .limit(limit)
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    private void bump(Question question, double weight) {
+        long now = System.currentTimeMillis();
+        if ((now - rankings.epochMillis) / DECAY_MILLIS > MAX_EXPONENT) {
+            rebase(now);
+        }
+
+        rebaseLock.readLock().lock();
+        try {
+            Rankings current = rankings;
+            double added = weight * Math.exp((now - current.epochMillis) / DECAY_MILLIS);
+            current.entries.compute(question, (q, old) -> {
+                HotEntry next = new HotEntry(q, (old == null ? 0 : old.score) + added);
+                current.replace(old, next);
+                return next;
+            });
+        } finally {
+            rebaseLock.readLock().unlock();
+        }
+    }
+
+    // Rescales every score to a new epoch; relative order is unchanged
+    private void rebase(long now) {
+        rebaseLock.writeLock().lock();
+        try {
+            Rankings old = rankings;
+            if ((now - old.epochMillis) / DECAY_MILLIS <= MAX_EXPONENT)
+                return; // another thread already rebased
+            Rankings rebased = new Rankings(now);
+            double scale = Math.exp(-(now - old.epochMillis) / DECAY_MILLIS);
+            for (HotEntry entry : old.entries.values()) {
+                HotEntry scaled = new HotEntry(entry.question, entry.score * scale);
+                rebased.entries.put(entry.question, scaled);
+                rebased.replace(null, scaled);
+            }
+            rankings = rebased;
+        } finally {
+            rebaseLock.writeLock().unlock();
+        }
+    }
+
+    private static class HotEntry {
+        final Question question;
+        final double score;
+
+        HotEntry(Question question, double score) {
+            this.question = question;
+            this.score = score;
+        }
+    }
+
+    private static class Rankings {
+        final long epochMillis;
+        final Map<Question, HotEntry> entries = new ConcurrentHashMap<>();
+        final NavigableSet<HotEntry> all = new ConcurrentSkipListSet<>(HOTTEST_FIRST);
+        final Map<Integer, NavigableSet<HotEntry>> byTag = new ConcurrentHashMap<>();
+
+        Rankings(long epochMillis) {
+            this.epochMillis = epochMillis;
+        }
+
+        // Adds the new entry before removing the old one, so a concurrent reader never misses the question
+        void replace(HotEntry old, HotEntry next) {
+            move(all, old, next);
+            BitSet tags = next.question.getTagBits();
+            for (int tagId = tags.nextSetBit(0); tagId >= 0; tagId = tags.nextSetBit(tagId + 1)) {
+                move(byTag.computeIfAbsent(tagId, id -> new ConcurrentSkipListSet<>(HOTTEST_FIRST)), old, next);
+            }
+        }
+
+        private static void move(NavigableSet<HotEntry> ranking, HotEntry old, HotEntry next) {
+            ranking.add(next);
+            // An unchanged score compares equal: the set keeps one entry, which must stay
+            if (old != null && HOTTEST_FIRST.compare(old, next) != 0) {
+                ranking.remove(old);
+            }
+        }
+    }
+}
+
+class RankedUser {
+    private final int rank;
+    private final User user;
+    private final int reputation;
+
+    public RankedUser(int rank, User user, int reputation) {
+        this.rank = rank;
+        this.user = user;
+        this.reputation = reputation;
+    }
+
+    public int getRank() { return rank; }
+    public User getUser() { return user; }
+    public int getReputation() { return reputation; }
+
+    @Override
+    public String toString() {
+        return "#" + rank + " " + user.getName() + " (" + reputation + ")";
+    }
+}
+
+/**
+ * Users ordered by reputation (highest first, ties by id) in an order-statistic treap:
+ * every node knows its subtree size, so both "rank of user X" and "the k-th user" are
+ * O(log n). Each node stores the reputation it was inserted with, which keeps pages
+ * consistent while User.reputation keeps moving; update() re-keys users in bulk.
+ */
+class ReputationLeaderboard {
+    private final LongMap<Node> nodesByUser = new LongMap<>(1); // guarded by lock
+    private final Random random = new Random();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root;
+
+    public void update(Collection<User> users) {
+        lock.writeLock().lock();
+        try {
+            for (User user : users) {
+                int reputation = user.getReputation();
+                Node old = nodesByUser.get(user.getId());
+                if (old != null && old.reputation == reputation)
+                    continue;
+                if (old != null) {
+                    root = remove(root, old);
+                }
+                Node node = new Node(user, reputation, random.nextInt());
+                root = insert(root, node);
+                nodesByUser.put(user.getId(), node);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int rankOf(long userId) {
+        lock.readLock().lock();
+        try {
+            Node node = nodesByUser.get(userId);
+            if (node == null)
+                return -1;
+            int before = 0;
+            Node t = root;
+            while (t != null) {
+                int c = compare(node, t);
+                if (c < 0) {
+                    t = t.left;
+                } else if (c > 0) {
+                    before += size(t.left) + 1;
+                    t = t.right;
+                } else {
+                    before += size(t.left);
+                    break;
+                }
+            }
+            return before + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<RankedUser> page(int offset, int limit) {
+        if (offset < 0)
+            throw new IllegalArgumentException("offset must not be negative: " + offset);
+        if (limit < 0)
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        lock.readLock().lock();
+        try {
+            List<RankedUser> page = new ArrayList<>();
+            int end = (int) Math.min(size(root), (long) offset + limit);
+            for (int k = offset; k < end; k++) {
+                Node node = select(k);
+                page.add(new RankedUser(k + 1, node.user, node.reputation));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Node select(int k) {
+        Node t = root;
+        while (true) {
+            int leftSize = size(t.left);
+            if (k < leftSize) {
+                t = t.left;
+            } else if (k == leftSize) {
+                return t;
+            } else {
+                k -= leftSize + 1;
+                t = t.right;
+            }
+        }
+    }
+
+    private static int compare(Node a, Node b) {
+        int byReputation = Integer.compare(b.reputation, a.reputation);
+        return byReputation != 0 ? byReputation : Long.compare(a.user.getId(), b.user.getId());
+    }
+
+    private static Node insert(Node t, Node node) {
+        if (t == null)
+            return node;
+        if (compare(node, t) < 0) {
+            t.left = insert(t.left, node);
+            if (t.left.priority > t.priority) {
+                t = rotateRight(t);
+            }
+        } else {
+            t.right = insert(t.right, node);
+            if (t.right.priority > t.priority) {
+                t = rotateLeft(t);
+            }
+        }
+        resize(t);
+        return t;
+    }
+
+    private static Node remove(Node t, Node node) {
+        if (t == null)
+            return null;
+        int c = compare(node, t);
+        if (c < 0) {
+            t.left = remove(t.left, node);
+        } else if (c > 0) {
+            t.right = remove(t.right, node);
+        } else {
+            t = merge(t.left, t.right);
+        }
+        if (t != null) {
+            resize(t);
+        }
+        return t;
+    }
+
+    // Every key in a sorts before every key in b
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            resize(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        resize(b);
+        return b;
+    }
+
+    private static Node rotateRight(Node t) {
+        Node left = t.left;
+        t.left = left.right;
+        left.right = t;
+        resize(t);
+        resize(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node t) {
+        Node right = t.right;
+        t.right = right.left;
+        right.left = t;
+        resize(t);
+        resize(right);
+        return right;
+    }
+
+    private static int size(Node t) {
+        return t == null ? 0 : t.size;
+    }
+
+    private static void resize(Node t) {
+        t.size = size(t.left) + size(t.right) + 1;
+    }
+
+    private static class Node {
+        final User user;
+        final int reputation;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(User user, int reputation, int priority) {
+            this.user = user;
+            this.reputation = reputation;
+            this.priority = priority;
+        }
+    }
+}
+
+//======= Question page cache =======
+
+/** Immutable rendering of one post, with the comments and score it had when rendered. */
+class PostView {
+    private final long id;
+    private final String authorName;
+    private final String body;
+    private final int score;
+    private final boolean accepted;
+    private final List<String> comments;
+
+    PostView(Post post, boolean accepted) {
+        this.id = post.getId();
+        this.authorName = post.getAuthor().getName();
+        this.body = post.getBody();
+        this.score = post.getVoteCount();
+        this.accepted = accepted;
+        List<String> rendered = new ArrayList<>();
+        for (Comment comment : post.getComments()) {
+            rendered.add(comment.getAuthor().getName() + ": " + comment.getBody());
+        }
+        this.comments = Collections.unmodifiableList(rendered);
+    }
+
+    public long getId() { return id; }
+    public String getAuthorName() { return authorName; }
+    public String getBody() { return body; }
+    public int getScore() { return score; }
+    public boolean isAccepted() { return accepted; }
+    public List<String> getComments() { return comments; }
+}
+
+/** Immutable rendering of a question page: the question and its answers, best first. */
+class QuestionView {
+    private final String title;
+    private final Set<Tag> tags;
+    private final PostView question;
+    private final List<PostView> answers;
+
+    QuestionView(Question question) {
+        this.title = question.getTitle();
+        this.tags = question.getTags();
+        this.question = new PostView(question, false);
+        List<PostView> rendered = new ArrayList<>();
+        for (Answer answer : question.getAnswers()) {
+            rendered.add(new PostView(answer, answer.isAccepted()));
+        }
+        this.answers = Collections.unmodifiableList(rendered);
+    }
+
+    public String getTitle() { return title; }
+    public Set<Tag> getTags() { return tags; }
+    public PostView getQuestion() { return question; }
+    public List<PostView> getAnswers() { return answers; }
+
+    @Override
+    public String toString() {
+        return title + " (" + question.getScore() + ") " + answers.size() + " answer(s)";
+    }
+}
+
+/**
+ * Read-through cache of rendered question pages, bounded with W-TinyLFU.
+ *
+ * Views live in a LongMap, whose reads are optimistic, so a hit takes no lock unless a
+ * write to the same stripe overlaps it. A miss renders the view without holding any lock
+ * and publishes it with putIfAbsent. Every post event on a question or one of its answers
+ * invalidates that question's view: it bumps an invalidation stamp, then removes the view.
+ * A render that sees the stamp move before its view was published withdraws that view,
+ * so an event landing mid-render never leaves a stale page cached.
+ *
+ * Eviction follows W-TinyLFU: new keys enter a small LRU window (1%); keys leaving
+ * the window must beat the main region's LRU victim on estimated frequency to be
+ * admitted. The main region is a segmented LRU (probation, then protected at 80%).
+ * Frequencies come from a 4-bit count-min sketch that halves itself periodically, so
+ * old popularity fades. Misses update the policy under its lock; hits are recorded
+ * with a CAS in a lossy, per-thread-striped ring buffer that is drained whenever the
+ * lock is free.
+ */
+class QuestionViewCache implements PostObserver {
+    private static final int STAMP_SLOTS = 1 << 12;
+
+    private final LongMap<QuestionView> views = new LongMap<>();
+    // Invalidation counts hashed by question id; a collision only costs a re-render
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(STAMP_SLOTS);
+    private final ReadBuffer readBuffer = new ReadBuffer();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+
+    // Guarded by policyLock. LinkedHashSet keeps LRU order: head is the eldest
+    private final LinkedHashSet<Long> window = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<Long> protectedRegion = new LinkedHashSet<>();
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+
+    public QuestionViewCache(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.protectedCapacity = mainCapacity * 8 / 10;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    public QuestionView get(Question question) {
+        long id = question.getId();
+        QuestionView view = views.get(id);
+        if (view == null) {
+            long stamp = invalidationStamps.get(stampSlot(id));
+            QuestionView rendered = new QuestionView(question);
+            view = views.putIfAbsent(id, rendered);
+            if (view == null) {
+                if (invalidationStamps.get(stampSlot(id)) != stamp) {
+                    views.remove(id, rendered); // may predate the event; serve it, but don't keep it
+                    return rendered;
+                }
+                policyLock.lock();
+                try {
+                    drainReads();
+                    onMiss(id);
+                } finally {
+                    policyLock.unlock();
+                }
+                return rendered;
+            }
+        }
+        if (readBuffer.offer(id) && policyLock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return view;
+    }
+
+    public void invalidate(long questionId) {
+        invalidationStamps.incrementAndGet(stampSlot(questionId));
+        views.remove(questionId); // the policy keeps the key; a re-render counts as a hit
+    }
+
+    private static int stampSlot(long questionId) {
+        return (int) ((questionId * 0x9e3779b97f4a7c15L) >>> 52); // top 12 bits
+    }
+
+    public int size() {
+        return views.size();
+    }
+
+    @Override
+    public void onPostEvent(Event event) {
+        Post post = event.getTargetPost();
+        Question question = post instanceof Answer ? ((Answer) post).getQuestion() : (Question) post;
+        invalidate(question.getId());
+    }
+
+    // --- Policy, all under policyLock ---
+
+    private void drainReads() {
+        readBuffer.drainTo(this::onHit);
+    }
+
+    private void onHit(long key) {
+        sketch.increment(key);
+        if (window.contains(key)) {
+            moveToTail(window, key);
+        } else if (probation.remove(key)) {
+            protectedRegion.add(key);
+            if (protectedRegion.size() > protectedCapacity) {
+                probation.add(removeEldest(protectedRegion));
+            }
+        } else if (protectedRegion.contains(key)) {
+            moveToTail(protectedRegion, key);
+        } else {
+            onMiss(key); // evicted while the read was buffered, then rendered again
+        }
+    }
+
+    private void onMiss(long key) {
+        if (window.contains(key) || probation.contains(key) || protectedRegion.contains(key)) {
+            onHit(key); // re-rendered after an invalidation
+            return;
+        }
+        sketch.increment(key);
+        window.add(key);
+        if (window.size() <= windowCapacity)
+            return;
+
+        long candidate = removeEldest(window);
+        if (probation.size() + protectedRegion.size() < mainCapacity) {
+            probation.add(candidate);
+            return;
+        }
+        LinkedHashSet<Long> victims = probation.isEmpty() ? protectedRegion : probation;
+        long victim = victims.iterator().next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            victims.remove(victim);
+            views.remove(victim);
+            probation.add(candidate);
+        } else {
+            views.remove(candidate);
+        }
+    }
+
+    private static void moveToTail(LinkedHashSet<Long> region, long key) {
+        region.remove(key);
+        region.add(key);
+    }
+
+    private static long removeEldest(LinkedHashSet<Long> region) {
+        Iterator<Long> eldest = region.iterator();
+        long key = eldest.next();
+        eldest.remove();
+        return key;
+    }
+
+    /**
+     * Lossy buffer of hit keys, striped by thread so concurrent readers rarely share a
+     * counter. Each stripe is a ring of 16 slots: recording a hit is one CAS on the stripe's
+     * tail, and a hit on a full stripe is dropped, as the policy only needs a sample.
+     * Drained by one thread at a time under the policy lock. Question ids are never 0,
+     * so 0 marks a slot that is free or not yet published.
+     */
+    private static final class ReadBuffer {
+        private static final int STRIPE_SIZE = 16;
+        private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+        private static final int PAD = 8; // counters of different stripes sit a cache line apart
+
+        private final int stripes;
+        private final AtomicLongArray slots;
+        private final AtomicLongArray heads; // advanced by the drainer only
+        private final AtomicLongArray tails;
+
+        ReadBuffer() {
+            this.stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+            this.slots = new AtomicLongArray(stripes * STRIPE_SIZE);
+            this.heads = new AtomicLongArray(stripes * PAD);
+            this.tails = new AtomicLongArray(stripes * PAD);
+        }
+
+        /** Records a hit; returns true once the stripe is half full and worth draining. */
+        boolean offer(long key) {
+            int stripe = stripeOfCurrentThread();
+            long head = heads.get(stripe * PAD);
+            long tail = tails.get(stripe * PAD);
+            long size = tail - head;
+            if (size >= STRIPE_SIZE)
+                return true;
+            if (tails.compareAndSet(stripe * PAD, tail, tail + 1)) {
+                slots.lazySet(stripe * STRIPE_SIZE + (int) (tail & STRIPE_MASK), key);
+            }
+            return size + 1 >= STRIPE_SIZE / 2;
+        }
+
+        void drainTo(LongConsumer consumer) {
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                long head = heads.get(stripe * PAD);
+                long tail = tails.get(stripe * PAD);
+                for (; head < tail; head++) {
+                    int slot = stripe * STRIPE_SIZE + (int) (head & STRIPE_MASK);
+                    long key = slots.get(slot);
+                    if (key == 0)
+                        break; // claimed but not yet written; picked up by the next drain
+                    slots.lazySet(slot, 0);
+                    consumer.accept(key);
+                }
+                heads.lazySet(stripe * PAD, head);
+            }
+        }
+
+        private int stripeOfCurrentThread() {
+            long h = Thread.currentThread().getId() * 0x9e3779b97f4a7c15L;
+            return (int) (h >>> 32) & (stripes - 1);
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, sixteen to a long, four hashed rows. After
+     * ten increments per slot of capacity every counter is halved.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int slots = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+            this.table = new long[slots];
+            this.mask = slots - 1;
+            this.sampleSize = 10 * capacity;
+        }
+
+        void increment(long key) {
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(key, row);
+                int shift = counterShift(key, row);
+                if (((table[index] >>> shift) & 0xfL) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(long key) {
+            int min = 15;
+            for (int row = 0; row < SEEDS.length; row++) {
+                min = Math.min(min, (int) ((table[index(key, row)] >>> counterShift(key, row)) & 0xfL));
+            }
+            return min;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        }
+
+        private int index(long key, int row) {
+            return (int) (hash(key, row) >>> 32) & mask;
+        }
+
+        // Each row reads its own 4-bit counter out of the sixteen in a word
+        private int counterShift(long key, int row) {
+            return (int) (hash(key, row) & 0xf) << 2;
+        }
+
+        private static long hash(long key, int row) {
+            long h = (key + SEEDS[row]) * 0x9e3779b97f4a7c15L;
+            return h ^ (h >>> 29);
+        }
+    }
+}
+
+/**
+ * Segmented append-only log of service events with periodic compacted snapshots.
+ * Every record is [length][sequence][type][field count][fields], each field a
+ * length-prefixed UTF-8 string. Segments roll at 16 MB and are named by their first
+ * sequence number. Appends are made durable by {@link #sync()}, which group-commits:
+ * concurrent writers share one fsync. A snapshot is the whole state re-expressed as the
+ * same kind of records, tagged with the last sequence it covers. It is built from a
+ * sealed prefix of the log (see {@link #seal()} and {@link #readView}), so writers keep
+ * appending to new segments meanwhile; once written, every segment it covers is deleted.
+ * Votes and accepts are captured as post events; users, questions and answers are
+ * appended by the service when they are created.
+ */
+class EventLog implements PostObserver {
+    static final byte USER = 1;
+    static final byte QUESTION = 2;
+    static final byte ANSWER = 3;
+    static final byte VOTE = 4;
+    static final byte ACCEPT = 5;
+    static final byte REPUTATION = 6; // snapshots only
+
+    private static final long SEGMENT_BYTES = 16L << 20;
+    private static final long SNAPSHOT_EVERY = 10_000;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private final Path directory;
+    private final long readLimit; // last sequence a read-only view replays
+    private final boolean readOnly;
+    private FileChannel segment;
+    private long segmentBytes;
+    private long nextSequence = 1;
+    private long snapshotSequence = 0; // last sequence covered by the latest snapshot
+    private volatile boolean appending = false;
+
+    // Group commit: one writer forces the segment on behalf of everyone waiting
+    private final Object syncLock = new Object();
+    private long syncedSequence = 0;
+
+    public EventLog(Path directory) {
+        this(directory, Long.MAX_VALUE, false);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open event log " + directory, e);
+        }
+    }
+
+    private EventLog(Path directory, long readLimit, boolean readOnly) {
+        this.directory = directory;
+        this.readLimit = readLimit;
+        this.readOnly = readOnly;
+    }
+
+    /** A view that replays the log up to and including {@code sequence} and never writes. */
+    public EventLog readView(long sequence) {
+        return new EventLog(directory, sequence, true);
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    // --- Recovery ---
+
+    public synchronized void loadSnapshot(Consumer<LogRecord> apply) {
+        List<Path> snapshots = list(SNAPSHOT_PREFIX);
+        if (snapshots.isEmpty())
+            return;
+        Path latest = snapshots.get(snapshots.size() - 1);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(latest)))) {
+            snapshotSequence = in.readLong();
+            nextSequence = snapshotSequence + 1;
+            LogRecord record;
+            while ((record = readRecord(in)) != null) {
+                apply.accept(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read snapshot " + latest, e);
+        }
+    }
+
+    /** Records appended after the loaded snapshot, in sequence order. */
+    public synchronized List<LogRecord> readTail() {
+        List<LogRecord> tail = new ArrayList<>();
+        for (Path file : list(SEGMENT_PREFIX)) {
+            if (firstSequence(file) > readLimit)
+                break; // written after the sealed prefix this view covers
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                LogRecord record;
+                while ((record = readRecord(in)) != null) {
+                    if (record.getSequence() > snapshotSequence && record.getSequence() <= readLimit) {
+                        tail.add(record);
+                        nextSequence = Math.max(nextSequence, record.getSequence() + 1);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read log segment " + file, e);
+            }
+        }
+        return tail;
+    }
+
+    /** Called once recovery is done; until then replayed events are not logged again. */
+    public void startAppending() {
+        appending = !readOnly;
+    }
+
+    // --- Appending ---
+
+    /** Writes the record; it is durable once a later {@link #sync()} returns. */
+    public synchronized void append(byte type, String... fields) {
+        if (!appending)
+            return;
+        try {
+            if (segment == null) {
+                Path file = directory.resolve(String.format("%s%020d.log", SEGMENT_PREFIX, nextSequence));
+                segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                segmentBytes = 0;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            segmentBytes += writeRecord(new DataOutputStream(bytes), nextSequence++, type, fields);
+            ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+            while (record.hasRemaining()) {
+                segment.write(record);
+            }
+            if (segmentBytes >= SEGMENT_BYTES) {
+                closeSegment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to event log", e);
+        }
+    }
+
+    /**
+     * Blocks until every record appended before the call is on disk. A writer arriving
+     * while a force is in flight waits for it and is usually covered by the next one.
+     */
+    public void sync() {
+        long target;
+        synchronized (this) {
+            target = nextSequence - 1;
+        }
+        synchronized (syncLock) {
+            if (syncedSequence >= target)
+                return;
+            FileChannel current;
+            long upTo;
+            synchronized (this) {
+                current = segment;
+                upTo = nextSequence - 1;
+            }
+            if (current != null) {
+                try {
+                    current.force(false);
+                } catch (ClosedChannelException e) {
+                    // Rolled over meanwhile; closing a segment forces it first
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot sync event log", e);
+                }
+            }
+            syncedSequence = upTo;
+        }
+    }
+
+    @Override
+    public void onPostEvent(Event event) {
+        Post post = event.getTargetPost();
+        switch (event.getType()) {
+            case UPVOTE_QUESTION:
+            case UPVOTE_ANSWER:
+                append(VOTE, String.valueOf(post.getId()), String.valueOf(event.getActor().getId()),
+                        VoteType.UPVOTE.name());
+                break;
+            case DOWNVOTE_QUESTION:
+            case DOWNVOTE_ANSWER:
+                append(VOTE, String.valueOf(post.getId()), String.valueOf(event.getActor().getId()),
+                        VoteType.DOWNVOTE.name());
+                break;
+            case ACCEPT_ANSWER:
+                append(ACCEPT, String.valueOf(((Answer) post).getQuestion().getId()), String.valueOf(post.getId()));
+                break;
+            default:
+                break; // answers are logged on creation
+        }
+    }
+
+    // --- Snapshots ---
+
+    public synchronized boolean snapshotDue() {
+        return nextSequence - 1 - snapshotSequence >= SNAPSHOT_EVERY;
+    }
+
+    /**
+     * Closes the current segment and returns the last sequence in it. Every record up to
+     * that sequence is now in a sealed, fsynced segment; later appends start a new one.
+     */
+    public synchronized long seal() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot seal event log", e);
+        }
+        return nextSequence - 1;
+    }
+
+    /**
+     * Writes a snapshot covering everything up to {@code covered}, which must have been
+     * sealed, then deletes the segments and older snapshots it makes redundant. Runs
+     * alongside appends: only segments starting at or before {@code covered} are touched.
+     */
+    public void writeSnapshot(long covered, SnapshotSource source) {
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + "tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeLong(covered);
+                source.writeTo((type, fields) -> writeRecord(out, 0, type, fields));
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, directory.resolve(String.format("%s%020d.bin", SNAPSHOT_PREFIX, covered)),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                snapshotSequence = Math.max(snapshotSequence, covered);
+            }
+
+            // Compaction: everything up to the snapshot is now redundant
+            for (Path file : list(SEGMENT_PREFIX)) {
+                if (firstSequence(file) <= covered) {
+                    Files.delete(file);
+                }
+            }
+            for (Path file : list(SNAPSHOT_PREFIX)) {
+                if (firstSequence(file) < covered) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot", e);
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close event log", e);
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            try (FileChannel closing = segment) {
+                segment = null;
+                closing.force(false);
+            }
+        }
+    }
+
+    // Zero-padded names sort in sequence order
+    private List<Path> list(String prefix) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(prefix)
+                            && !f.getFileName().toString().endsWith("tmp"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list event log " + directory, e);
+        }
+    }
+
+    // The sequence in a segment or snapshot name: first record, or last one covered
+    private static long firstSequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    private static int writeRecord(DataOutputStream out, long sequence, byte type, String[] fields) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeLong(sequence);
+        record.writeByte(type);
+        record.writeInt(fields.length);
+        for (String field : fields) {
+            byte[] utf8 = field.getBytes(StandardCharsets.UTF_8);
+            record.writeInt(utf8.length);
+            record.write(utf8);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        return Integer.BYTES + bytes.size();
+    }
+
+    // Null at the end of the file, including a record torn by a crash mid-append
+    private static LogRecord readRecord(DataInputStream in) throws IOException {
+        byte[] bytes;
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > SEGMENT_BYTES)
+                return null;
+            bytes = new byte[length];
+            in.readFully(bytes);
+        } catch (EOFException e) {
+            return null;
+        }
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+        long sequence = record.readLong();
+        byte type = record.readByte();
+        String[] fields = new String[record.readInt()];
+        for (int i = 0; i < fields.length; i++) {
+            byte[] utf8 = new byte[record.readInt()];
+            record.readFully(utf8);
+            fields[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        return new LogRecord(sequence, type, fields);
+    }
+
+    interface RecordSink {
+        void write(byte type, String... fields) throws IOException;
+    }
+
+    interface SnapshotSource {
+        void writeTo(RecordSink sink) throws IOException;
+    }
+
+    static class LogRecord {
+        private final long sequence;
+        private final byte type;
+        private final String[] fields;
+
+        LogRecord(long sequence, byte type, String[] fields) {
+            this.sequence = sequence;
+            this.type = type;
+            this.fields = fields;
+        }
+
+        public long getSequence() { return sequence; }
+        public byte getType() { return type; }
+        public String field(int index) { return fields[index]; }
+        public long id(int index) { return Long.parseLong(fields[index]); }
+        public int size() { return fields.length; }
+    }
+}
+
+//======= Search Strategies =======
+
+interface SearchStrategy {
+    boolean matches(Question question);
+
+    /** Relative cost of one {@link #matches} call, used to run cheap filters first. */
+    default int cost() { return 1; }
+
+    /** The index this filter can be answered from, if any; empty means it can only be checked per question. */
+    default Optional<IndexScan> indexScan(QuestionIndexes indexes) { return Optional.empty(); }
+
+    default List<Question> filter(List<Question> questions) {
+        return questions.stream()
+                .filter(this::matches)
+                .collect(Collectors.toList());
+    }
+}
+
+/** One filter's index access: how many questions it yields, from index statistics, and those questions lazily. */
+class IndexScan {
+    private final int estimate;
+    private final Supplier<Stream<Question>> candidates;
+
+    IndexScan(int estimate, Supplier<Stream<Question>> candidates) {
+        this.estimate = estimate;
+        this.candidates = candidates;
+    }
+
+    public int getEstimate() { return estimate; }
+    public Stream<Question> candidates() { return candidates.get(); }
+}
+
+class KeywordSearchStrategy implements SearchStrategy {
+    private final String keyword;
+
+    public KeywordSearchStrategy(String keyword) {
+        this.keyword = keyword;
+    }
+
+    @Override
+    public boolean matches(Question q) {
+        return containsIgnoreCase(q.getTitle(), keyword) || containsIgnoreCase(q.getBody(), keyword);
+    }
+
+    @Override
+    public int cost() { return 10; }
+
+    // Case-insensitive contains without lower-casing (and copying) the whole text
+    private static boolean containsIgnoreCase(String text, String word) {
+        for (int i = 0; i <= text.length() - word.length(); i++) {
+            if (text.regionMatches(true, i, word, 0, word.length()))
+                return true;
+        }
+        return false;
+    }
+}
+
+class TagSearchStrategy implements SearchStrategy {
+    private final Tag tag;
+
+    public TagSearchStrategy(Tag tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public boolean matches(Question q) {
+        return q.hasTag(tag);
+    }
+
+    @Override
+    public Optional<IndexScan> indexScan(QuestionIndexes indexes) {
+        return Optional.of(new IndexScan(indexes.countWithTag(tag), () -> indexes.questionsWithTag(tag)));
+    }
+}
+
+class UserSearchStrategy implements SearchStrategy {
+    private final User user;
+
+    public UserSearchStrategy(User user) {
+        this.user = user;
+    }
+
+    @Override
+    public boolean matches(Question q) {
+        return q.getAuthor().getId() == user.getId();
+    }
+
+    @Override
+    public Optional<IndexScan> indexScan(QuestionIndexes indexes) {
+        return Optional.of(new IndexScan(indexes.countByAuthor(user), () -> indexes.questionsByAuthor(user)));
+    }
+}
+
+/**
+ * Inverted index from normalized tokens to questions, with term frequencies kept per field
+ * (title, body, answers). Queries are ranked with BM25F: per-field term frequencies are
+ * length-normalized and weighted before the usual BM25 saturation and idf.
+ * Answers are indexed into their question, so a match in an answer ranks the question.
+ */
+class KeywordIndex {
+    private static final int TITLE = 0;
+    private static final int BODY = 1;
+    private static final int ANSWERS = 2;
+    private static final double[] FIELD_WEIGHTS = {2.0, 1.0, 0.5};
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Map<Question, int[]>> postings = new HashMap<>();
+    private final Map<Question, int[]> fieldLengths = new HashMap<>();
+    private final long[] totalFieldLengths = new long[FIELD_WEIGHTS.length];
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void addQuestion(Question question) {
+        lock.writeLock().lock();
+        try {
+            index(question, TITLE, question.getTitle());
+            index(question, BODY, question.getBody());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAnswer(Question question, Answer answer) {
+        lock.writeLock().lock();
+        try {
+            index(question, ANSWERS, answer.getBody());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** One page of matches, best first; {@code page} is 0-based. */
+    public List<Question> search(String query, int page, int pageSize) {
+        if (page < 0)
+            throw new IllegalArgumentException("page must not be negative: " + page);
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        lock.readLock().lock();
+        try {
+            Map<Question, Double> scores = score(new LinkedHashSet<>(tokenize(query)));
+
+            // Keep only the best (page + 1) * pageSize in a min-heap, ties broken by id
+            Comparator<Map.Entry<Question, Double>> byRelevance = Map.Entry.<Question, Double>comparingByValue()
+                    .thenComparing(e -> e.getKey().getId(), Comparator.reverseOrder());
+            int keep = (int) Math.min(Integer.MAX_VALUE, (page + 1L) * pageSize);
+            PriorityQueue<Map.Entry<Question, Double>> top = new PriorityQueue<>(byRelevance);
+            for (Map.Entry<Question, Double> entry : scores.entrySet()) {
+                top.offer(entry);
+                if (top.size() > keep) {
+                    top.poll();
+                }
+            }
+
+            List<Map.Entry<Question, Double>> ranked = new ArrayList<>(top);
+            ranked.sort(byRelevance.reversed());
+            return ranked.stream()
+                    .skip((long) page * pageSize)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Question, Double> score(Set<String> terms) {
+        Map<Question, Double> scores = new HashMap<>();
+        int documents = fieldLengths.size();
+        if (documents == 0)
+            return scores;
+
+        double[] averageLengths = new double[totalFieldLengths.length];
+        for (int field = 0; field < averageLengths.length; field++) {
+            averageLengths[field] = (double) totalFieldLengths[field] / documents;
+        }
+
+        for (String term : terms) {
+            Map<Question, int[]> posting = postings.get(term);
+            if (posting == null)
+                continue;
+            double idf = Math.log(1 + (documents - posting.size() + 0.5) / (posting.size() + 0.5));
+            for (Map.Entry<Question, int[]> entry : posting.entrySet()) {
+                int[] lengths = fieldLengths.get(entry.getKey());
+                double tf = 0;
+                for (int field = 0; field < FIELD_WEIGHTS.length; field++) {
+                    int frequency = entry.getValue()[field];
+                    if (frequency > 0) {
+                        double norm = 1 - B + B * lengths[field] / averageLengths[field];
+                        tf += FIELD_WEIGHTS[field] * frequency / norm;
+                    }
+                }
+                scores.merge(entry.getKey(), idf * tf * (K1 + 1) / (K1 + tf), Double::sum);
+            }
+        }
+        return scores;
+    }
+
+    private void index(Question question, int field, String text) {
+        List<String> tokens = tokenize(text);
+        fieldLengths.computeIfAbsent(question, q -> new int[FIELD_WEIGHTS.length])[field] += tokens.size();
+        totalFieldLengths[field] += tokens.size();
+        for (String token : tokens) {
+            postings.computeIfAbsent(token, t -> new HashMap<>())
+                    .computeIfAbsent(question, q -> new int[FIELD_WEIGHTS.length])[field]++;
+        }
+    }
+
+    /** Lower-cased runs of letters and digits. */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
+
+/**
+ * Index lookups the query planner can use instead of scanning every question.
+ * Counts are cheap statistics for planning; the streams are lazy.
+ */
+interface QuestionIndexes {
+    int questionCount();
+    Stream<Question> allQuestions();
+    int countWithTag(Tag tag);
+    Stream<Question> questionsWithTag(Tag tag);
+    int countByAuthor(User author);
+    Stream<Question> questionsByAuthor(User author);
+}
+
+/**
+ * Turns a list of search strategies into one pass over the questions.
+ * Plans are costed from index cardinalities alone: the filter with the smallest index
+ * count drives the query (a full scan only when no filter has an index), and only its
+ * candidates are ever read. Every other filter is folded into a single predicate, ordered
+ * by call cost over the share of questions it rejects, and results are streamed lazily.
+ */
+class QueryPlanner {
+    // Assumed share of questions passing a filter that has no index to estimate from
+    private static final double UNKNOWN_SELECTIVITY = 0.5;
+
+    private final QuestionIndexes indexes;
+
+    public QueryPlanner(QuestionIndexes indexes) {
+        this.indexes = indexes;
+    }
+
+    public Stream<Question> execute(List<SearchStrategy> strategies) {
+        int total = indexes.questionCount();
+        Map<SearchStrategy, Integer> estimates = new IdentityHashMap<>();
+        SearchStrategy driver = null;
+        IndexScan driverScan = null;
+        for (SearchStrategy strategy : strategies) {
+            IndexScan scan = strategy.indexScan(indexes).orElse(null);
+            int estimate = scan == null ? -1 : scan.getEstimate();
+            if (estimate == 0)
+                return Stream.empty();
+            estimates.put(strategy, estimate);
+            if (scan != null && estimate < (driverScan == null ? total : driverScan.getEstimate())) {
+                driver = strategy;
+                driverScan = scan;
+            }
+        }
+
+        Predicate<Question> predicate = q -> true;
+        List<SearchStrategy> residual = new ArrayList<>(strategies);
+        residual.remove(driver);
+        residual.sort(Comparator.comparingDouble(strategy -> rank(strategy, estimates.get(strategy), total)));
+        for (SearchStrategy strategy : residual) {
+            predicate = predicate.and(strategy::matches);
+        }
+        Stream<Question> source = driverScan == null ? indexes.allQuestions() : driverScan.candidates();
+        return source.filter(predicate);
+    }
+
+    // Expected cost per question reaching this filter, per question it eliminates
+    private static double rank(SearchStrategy strategy, int estimate, int total) {
+        double selectivity = estimate < 0 || total == 0 ? UNKNOWN_SELECTIVITY : Math.min(1.0, (double) estimate / total);
+        return strategy.cost() / Math.max(1 - selectivity, 1e-6);
+    }
+}
@@ -1,21 +1,74 @@
 package Task_Management;
 
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.LineNumberReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 public class TaskManagementSystemDemo {
@@ -36,7 +89,8 @@ public class TaskManagementSystemDemo {
         Task subtask1 = taskManagementSystem.createTask( "Enhancement sub task", "Design UI/UX",
                 LocalDate.now().plusDays(1), TaskPriority.MEDIUM, user1.getId());
         Task task2 = taskManagementSystem.createTask("Bug Fix Task", "Fix API Bug",
-                LocalDate.now().plusDays(3), TaskPriority.HIGH, user2.getId());
+                LocalDate.now().plusDays(3), TaskPriority.HIGH, user2.getId(),
+                Set.of(Tag.of("backend"), Tag.of("urgent")));
 
         task1.addSubtask(subtask1);
 
@@ -51,6 +105,7 @@ public class TaskManagementSystemDemo {
         // Assign task
         subtask1.setAssignee(user2);
 
+        ReminderService.configure(Path.of("reminder-store"));
         ReminderService reminderService = ReminderService.getInstance();
    
 
@@ -71,6 +126,28 @@ reminderService.setReminder(task1, user1, reminderTime);
             System.out.println(task.getTitle());
         }
 
+        // Page through search results two at a time
+        TaskSortStrategy byPriority = new SortByPriority();
+        List<Task> firstPage = taskManagementSystem.searchTasks("Task", byPriority, 2, null);
+        System.out.println("\nFirst page by priority:");
+        for (Task task : firstPage) {
+            System.out.println(task.getTitle());
+        }
+        if (!firstPage.isEmpty()) {
+            PageCursor<?> cursor = byPriority.cursorAfter(firstPage.get(firstPage.size() - 1));
+            List<Task> nextPage = taskManagementSystem.searchTasks("Task", byPriority, 2, cursor);
+            System.out.println("Next page by priority:");
+            for (Task task : nextPage) {
+                System.out.println(task.getTitle());
+            }
+        }
+
+        // Filter tasks by tags
+        System.out.println("\nTasks tagged backend AND urgent:");
+        for (Task task : taskManagementSystem.listTasksWithAllTags(Set.of(Tag.of("Backend"), Tag.of("urgent")))) {
+            System.out.println(task.getTitle() + " " + task.getTags());
+        }
+
         // Filter tasks by status
         List<Task> filteredTasks = taskManagementSystem.listTasksByStatus(TaskStatus.TODO);
         System.out.println("\nTODO Tasks:");
@@ -90,6 +167,31 @@ reminderService.setReminder(task1, user1, reminderTime);
 
         taskList1.display();
 
+        // Optimistic update: the second editor still holds the old version and is rejected
+        long version = task2.getSnapshot().getVersion();
+        taskManagementSystem.updateTask(task2.getId(), version, s -> s.withPriority(TaskPriority.CRITICAL));
+        try {
+            taskManagementSystem.updateTask(task2.getId(), version, s -> s.withTitle("Stale edit"));
+        } catch (ConcurrentModificationException e) {
+            System.out.println("\nUpdate rejected: " + e.getMessage());
+        }
+
+        System.out.println("\nProgress of " + task1.getTitle() + ": " + task1.getRollup());
+
+        System.out.println("\nActivity for " + subtask1.getTitle() + ":");
+        for (ActivityLog log : subtask1.getActivityLogs()) {
+            System.out.println(log);
+        }
+
+        // Export everything as CSV rows
+        StringWriter export = new StringWriter();
+        try {
+            taskManagementSystem.exportTo(export);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println("\nExported " + export.toString().lines().count() + " rows");
+
         // Delete a task
         taskManagementSystem.deleteTask(task2.getId());
     }
@@ -99,11 +201,16 @@ class TaskManagementSystem {
     private final Map<String, User> users;
     private final Map<String, Task> tasks;
     private final Map<String, TaskList> taskLists;
+    private final TaskEventBus eventBus;
+    private final TagIndex<Task> tagIndex;
 
     private TaskManagementSystem() {
         users = new ConcurrentHashMap<>();
         tasks = new ConcurrentHashMap<>();
         taskLists = new ConcurrentHashMap<>();
+        eventBus = new TaskEventBus();
+        tagIndex = new TagIndex<>(Task::getId);
+        eventBus.subscribe(new ActivityLogger());
     }
 
     public static synchronized TaskManagementSystem getInstance() {
@@ -127,6 +234,11 @@ class TaskManagementSystem {
 
     public Task createTask(String title, String description, LocalDate dueDate,
                            TaskPriority priority, String createdByUserId) {
+        return createTask(title, description, dueDate, priority, createdByUserId, Set.of());
+    }
+
+    public Task createTask(String title, String description, LocalDate dueDate,
+                           TaskPriority priority, String createdByUserId, Set<Tag> tags) {
         User createdBy = users.get(createdByUserId);
         if (createdBy == null)
             throw new IllegalArgumentException("User not found.");
@@ -136,11 +248,10 @@ class TaskManagementSystem {
                 .dueDate(dueDate)
                 .priority(priority)
                 .createdBy(createdBy)
+                .tags(tags)
                 .build();
 
-        task.addObserver(new ActivityLogger());
-
-        tasks.put(task.getId(), task);
+        register(task);
         return task;
     }
 
@@ -158,7 +269,69 @@ class TaskManagementSystem {
     }
 
     public void deleteTask(String taskId) {
-        tasks.remove(taskId);
+        Task task = tasks.remove(taskId);
+        if (task != null) {
+            tagIndex.remove(task, task.getTagBits());
+        }
+    }
+
+    public List<Task> listTasksWithAllTags(Set<Tag> tags) {
+        return tagIndex.matchAll(tags);
+    }
+
+    public List<Task> listTasksWithAnyTag(Set<Tag> tags) {
+        return tagIndex.matchAny(tags);
+    }
+
+    public Task getTask(String taskId) {
+        return tasks.get(taskId);
+    }
+
+    public User getUser(String userId) {
+        return users.get(userId);
+    }
+
+    public TaskList getTaskList(String taskListId) {
+        return taskLists.get(taskListId);
+    }
+
+    public Task.Snapshot updateTask(String taskId, long expectedVersion, UnaryOperator<Task.Snapshot> mutation) {
+        Task task = tasks.get(taskId);
+        if (task == null)
+            throw new IllegalArgumentException("Task not found.");
+        return task.update(expectedVersion, mutation);
+    }
+
+    public TaskEventBus getEventBus() {
+        return eventBus;
+    }
+
+    // --- Bulk import/export ---
+
+    public int importFrom(Reader in) throws IOException {
+        return new TaskBulkLoader(this).importFrom(in);
+    }
+
+    public void exportTo(Writer out) throws IOException {
+        new TaskBulkLoader(this).exportTo(out);
+    }
+
+    Collection<User> getUsers() { return users.values(); }
+    Collection<Task> getTasks() { return tasks.values(); }
+    Collection<TaskList> getTaskLists() { return taskLists.values(); }
+
+    void register(User user) {
+        users.put(user.getId(), user);
+    }
+
+    void register(TaskList taskList) {
+        taskLists.put(taskList.getId(), taskList);
+    }
+
+    void register(Task task) {
+        task.addObserver(eventBus);
+        tasks.put(task.getId(), task);
+        tagIndex.add(task, task.getTagBits());
     }
 
     public List<Task> searchTasks(String keyword, TaskSortStrategy sortingStrategy) {
@@ -171,7 +344,356 @@ class TaskManagementSystem {
         sortingStrategy.sort(matchingTasks);
         return matchingTasks;
     }
+
+    public List<Task> searchTasks(String keyword, TaskSortStrategy sortingStrategy, int limit, PageCursor<?> cursor) {
+        Iterable<Task> matchingTasks = () -> tasks.values().stream()
+                .filter(task -> task.getTitle().contains(keyword) || task.getDescription().contains(keyword))
+                .iterator();
+        return sortingStrategy.topK(matchingTasks, limit, cursor);
+    }
+}
+/**
+ * Streams users, task lists and tasks in and out of a TaskManagementSystem as CSV rows:
+ * <pre>
+ * USER,id,name,email
+ * LIST,id,name
+ * TASK,id,parentId,title,description,dueDate,priority,createdById,assigneeId,status,tags
+ * COMMENT,id,taskId,authorId,epochMillis,content
+ * LIST_TASK,listId,taskId
+ * </pre>
+ * Export writes users and lists first and each task before its subtasks and comments, so
+ * import can resolve every reference in one forward pass. Import parses batches of rows on
+ * a thread pool while a single thread applies finished batches in file order; only a
+ * bounded number of batches is in flight, so memory stays flat for any file size.
+ * Malformed rows and unknown references fail the import with the offending line number.
+ * Activity history is not exported (import records its own entries), and reminders are
+ * not either: they live in the ReminderStore, keyed by task id.
+ */
+class TaskBulkLoader {
+    private static final int BATCH_SIZE = 1_000;
+    private static final Map<String, Integer> FIELD_COUNTS =
+            Map.of("USER", 4, "LIST", 3, "TASK", 10, "COMMENT", 6, "LIST_TASK", 3);
+
+    private final TaskManagementSystem system;
+
+    public TaskBulkLoader(TaskManagementSystem system) {
+        this.system = system;
+    }
+
+    public int importFrom(Reader in) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        Deque<Future<List<CsvRow>>> inFlight = new ArrayDeque<>();
+        int rows = 0;
+        try {
+            LineNumberReader reader = new LineNumberReader(in);
+            List<CsvRecord> batch = new ArrayList<>(BATCH_SIZE);
+            CsvRecord record;
+            while ((record = readRecord(reader)) != null) {
+                batch.add(record);
+                if (batch.size() == BATCH_SIZE) {
+                    List<CsvRecord> records = batch;
+                    inFlight.add(parsers.submit(() -> parseAll(records)));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    if (inFlight.size() >= 2 * threads) {
+                        rows += apply(await(inFlight.poll()));
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                List<CsvRecord> records = batch;
+                inFlight.add(parsers.submit(() -> parseAll(records)));
+            }
+            while (!inFlight.isEmpty()) {
+                rows += apply(await(inFlight.poll()));
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+        return rows;
+    }
+
+    public void exportTo(Writer out) throws IOException {
+        BufferedWriter writer = new BufferedWriter(out);
+        for (User user : system.getUsers()) {
+            writeRow(writer, "USER", user.getId(), user.getName(), user.getEmail());
+        }
+        for (TaskList taskList : system.getTaskLists()) {
+            writeRow(writer, "LIST", taskList.getId(), taskList.getName());
+        }
+        for (Task task : system.getTasks()) {
+            Task parent = task.getParent();
+            if (parent == null || system.getTask(parent.getId()) == null) {
+                writeTree(writer, task);
+            }
+        }
+        for (Task task : system.getTasks()) {
+            for (Comment comment : task.getComments()) {
+                writeRow(writer, "COMMENT", comment.getId(), task.getId(), comment.getAuthor().getId(),
+                        Long.toString(comment.getTimestamp().getTime()), comment.getContent());
+            }
+        }
+        for (TaskList taskList : system.getTaskLists()) {
+            for (Task task : taskList.getTasks()) {
+                if (system.getTask(task.getId()) != null) {
+                    writeRow(writer, "LIST_TASK", taskList.getId(), task.getId());
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private void writeTree(BufferedWriter writer, Task task) throws IOException {
+        Task.Snapshot current = task.getSnapshot();
+        Task parent = task.getParent();
+        writeRow(writer, "TASK", task.getId(),
+                parent == null ? null : parent.getId(),
+                current.getTitle(),
+                current.getDescription(),
+                task.getDueDate() == null ? null : task.getDueDate().toString(),
+                current.getPriority() == null ? null : current.getPriority().name(),
+                task.getCreatedBy() == null ? null : task.getCreatedBy().getId(),
+                current.getAssignee() == null ? null : current.getAssignee().getId(),
+                current.getStatus().name(),
+                joinTags(task.getTags()));
+        for (Task subtask : task.getSubtasks()) {
+            if (system.getTask(subtask.getId()) != null) {
+                writeTree(writer, subtask);
+            }
+        }
+    }
+
+    // Runs on the applying thread only, in file order
+    private int apply(List<CsvRow> rows) {
+        for (CsvRow row : rows) {
+            try {
+                applyRow(row);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Line " + row.line + ": " + e.getMessage(), e);
+            }
+        }
+        return rows.size();
+    }
+
+    private void applyRow(CsvRow row) {
+        Integer required = FIELD_COUNTS.get(row.get(0));
+        if (required == null)
+            throw new IllegalArgumentException("Unknown row type: " + row.get(0));
+        if (row.size() < required)
+            throw new IllegalArgumentException(row.get(0) + " row has " + row.size()
+                    + " fields, expected " + required);
+        switch (row.get(0)) {
+            case "USER":
+                system.register(new User(row.get(1), row.get(2), row.get(3)));
+                break;
+            case "LIST":
+                system.register(new TaskList(row.get(1), row.get(2)));
+                break;
+            case "TASK":
+                applyTask(row);
+                break;
+            case "COMMENT":
+                Comment comment = new Comment(row.get(1), row.get(5), requireUser(row.get(3), "author"),
+                        new Date(Long.parseLong(row.get(4))));
+                requireTask(row.get(2)).restoreComment(comment);
+                break;
+            default: // LIST_TASK
+                TaskList taskList = system.getTaskList(row.get(1));
+                if (taskList == null)
+                    throw new IllegalArgumentException("Unknown task list " + row.get(1));
+                taskList.addTask(requireTask(row.get(2)));
+                break;
+        }
+    }
+
+    private void applyTask(CsvRow row) {
+        Task task = new Task.TaskBuilder(row.get(3))
+                .id(row.get(1))
+                .description(row.get(4) == null ? "" : row.get(4))
+                .dueDate(row.get(5) == null ? null : LocalDate.parse(row.get(5)))
+                .priority(row.get(6) == null ? null : TaskPriority.valueOf(row.get(6)))
+                .createdBy(row.get(7) == null ? null : requireUser(row.get(7), "createdBy"))
+                .assignee(row.get(8) == null ? null : requireUser(row.get(8), "assignee"))
+                .status(TaskStatus.valueOf(row.get(9)))
+                .tags(parseTags(row.size() > 10 ? row.get(10) : null))
+                .build();
+        if (row.get(2) != null) {
+            Task parent = system.getTask(row.get(2));
+            if (parent == null)
+                throw new IllegalArgumentException("Subtask " + task.getId() + " comes before its parent.");
+            parent.linkSubtask(task);
+        }
+        system.register(task);
+    }
+
+    private User requireUser(String userId, String role) {
+        User user = system.getUser(userId);
+        if (user == null)
+            throw new IllegalArgumentException("Unknown " + role + " user " + userId);
+        return user;
+    }
+
+    private Task requireTask(String taskId) {
+        Task task = system.getTask(taskId);
+        if (task == null)
+            throw new IllegalArgumentException("Unknown task " + taskId);
+        return task;
+    }
+
+    // Tags are '|'-separated; a '|' or '\\' inside a tag name is escaped with '\\'
+    private static String joinTags(Set<Tag> tags) {
+        StringBuilder field = new StringBuilder();
+        for (Tag tag : tags) {
+            if (field.length() > 0) field.append('|');
+            for (char c : tag.getName().toCharArray()) {
+                if (c == '|' || c == '\\') field.append('\\');
+                field.append(c);
+            }
+        }
+        return field.toString();
+    }
+
+    private static Set<Tag> parseTags(String field) {
+        if (field == null || field.isEmpty())
+            return Set.of();
+        Set<Tag> tags = new LinkedHashSet<>();
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                name.append(field.charAt(++i));
+            } else if (c == '|') {
+                tags.add(Tag.of(name.toString()));
+                name.setLength(0);
+            } else {
+                name.append(c);
+            }
+        }
+        tags.add(Tag.of(name.toString()));
+        return tags;
+    }
+
+    private static List<CsvRow> await(Future<List<CsvRow>> batch) throws IOException {
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // --- CSV ---
+
+    // One logical record; quoted fields may span physical lines
+    private static CsvRecord readRecord(LineNumberReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null)
+            return null;
+        int lineNumber = reader.getLineNumber();
+        StringBuilder record = new StringBuilder(line);
+        while (countQuotes(record) % 2 != 0) {
+            String next = reader.readLine();
+            if (next == null)
+                throw new IllegalArgumentException("Line " + lineNumber + ": unterminated quoted field: " + record);
+            record.append('\n').append(next);
+        }
+        return new CsvRecord(lineNumber, record.toString());
+    }
+
+    private static int countQuotes(CharSequence text) {
+        int quotes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') quotes++;
+        }
+        return quotes;
+    }
+
+    private static List<CsvRow> parseAll(List<CsvRecord> records) {
+        List<CsvRow> rows = new ArrayList<>(records.size());
+        for (CsvRecord record : records) {
+            rows.add(new CsvRow(record.line, parse(record.text)));
+        }
+        return rows;
+    }
+
+    // Empty unquoted fields are null, "" is the empty string
+    private static List<String> parse(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+        return fields;
+    }
+
+    private static void writeRow(BufferedWriter writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) writer.write(',');
+            String field = fields[i];
+            if (field == null)
+                continue;
+            if (field.isEmpty() || field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+                    || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.newLine();
+    }
+
+    private static final class CsvRecord {
+        final int line;
+        final String text;
+
+        CsvRecord(int line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+    }
+
+    private static final class CsvRow {
+        final int line;
+        private final List<String> fields;
+
+        CsvRow(int line, List<String> fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+
+        String get(int index) { return fields.get(index); }
+        int size() { return fields.size(); }
+    }
 }
+
  enum TaskPriority {
     LOW,
     MEDIUM,
@@ -187,16 +709,137 @@ class ActivityLog {
     private final String description;
     private final LocalDateTime timestamp;
 
-    public ActivityLog(String description) {
+    public ActivityLog(String description, LocalDateTime timestamp) {
         this.description = description;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = timestamp;
     }
 
+    public String getDescription() { return description; }
+    public LocalDateTime getTimestamp() { return timestamp; }
+
     @Override
     public String toString() {
         return "[" + timestamp + "] " + description;
     }
 }
+
+/**
+ * Shared, bounded activity log kept off-heap in fixed-size direct buffer segments.
+ * Records are [previous offset][epoch millis][length][UTF-8 description]; the previous
+ * offset links each task's records together, so a task only has to remember the offset
+ * of its latest record. Once all segments are in use the oldest one is recycled, and
+ * history reads simply stop at records that have been overwritten.
+ */
+class ActivityLogStore {
+    private static final int SEGMENT_SIZE = 1 << 20;
+    private static final int MAX_SEGMENTS = 64;
+    private static final int HEADER_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int MAX_DESCRIPTION_CHARS = 1024;
+    static final long NO_OFFSET = -1;
+
+    private static final ActivityLogStore INSTANCE = new ActivityLogStore();
+
+    private final ByteBuffer[] segments = new ByteBuffer[MAX_SEGMENTS];
+    private long startOffset = 0; // oldest record still retained
+    private long endOffset = 0;   // where the next record goes
+
+    private ActivityLogStore() {}
+
+    public static ActivityLogStore getInstance() {
+        return INSTANCE;
+    }
+
+    /** Appends a record linked to {@code previousOffset} and returns its own offset. */
+    public synchronized long append(long previousOffset, String description) {
+        if (description.length() > MAX_DESCRIPTION_CHARS) {
+            description = description.substring(0, MAX_DESCRIPTION_CHARS);
+        }
+        byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        int size = HEADER_SIZE + bytes.length;
+
+        // Records never span segments
+        int position = (int) (endOffset % SEGMENT_SIZE);
+        if (position + size > SEGMENT_SIZE) {
+            endOffset += SEGMENT_SIZE - position;
+            position = 0;
+        }
+        if (position == 0) {
+            openSegment(endOffset / SEGMENT_SIZE);
+        }
+
+        ByteBuffer segment = segmentOf(endOffset);
+        segment.putLong(position, previousOffset);
+        segment.putLong(position + Long.BYTES, System.currentTimeMillis());
+        segment.putInt(position + 2 * Long.BYTES, bytes.length);
+        segment.put(position + HEADER_SIZE, bytes);
+
+        long offset = endOffset;
+        endOffset += size;
+        return offset;
+    }
+
+    /** Streams a task's history, newest first, starting from its latest record. */
+    public Iterator<ActivityLog> history(long lastOffset) {
+        return new Iterator<>() {
+            private long offset = lastOffset;
+            private LogRecord next = read(offset);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public ActivityLog next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                ActivityLog log = next.log;
+                offset = next.previousOffset;
+                next = read(offset);
+                return log;
+            }
+        };
+    }
+
+    private synchronized LogRecord read(long offset) {
+        if (offset == NO_OFFSET || offset < startOffset)
+            return null; // start of the task's history, or already recycled
+
+        ByteBuffer segment = segmentOf(offset);
+        int position = (int) (offset % SEGMENT_SIZE);
+        long previousOffset = segment.getLong(position);
+        long timestamp = segment.getLong(position + Long.BYTES);
+        byte[] bytes = new byte[segment.getInt(position + 2 * Long.BYTES)];
+        segment.get(position + HEADER_SIZE, bytes);
+
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+        return new LogRecord(new ActivityLog(new String(bytes, StandardCharsets.UTF_8), time), previousOffset);
+    }
+
+    private void openSegment(long segmentIndex) {
+        int slot = (int) (segmentIndex % MAX_SEGMENTS);
+        if (segments[slot] == null) {
+            segments[slot] = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+        }
+        if (segmentIndex >= MAX_SEGMENTS) {
+            startOffset = (segmentIndex - MAX_SEGMENTS + 1) * SEGMENT_SIZE;
+        }
+    }
+
+    private ByteBuffer segmentOf(long offset) {
+        return segments[(int) ((offset / SEGMENT_SIZE) % MAX_SEGMENTS)];
+    }
+
+    private static class LogRecord {
+        final ActivityLog log;
+        final long previousOffset;
+
+        LogRecord(ActivityLog log, long previousOffset) {
+            this.log = log;
+            this.previousOffset = previousOffset;
+        }
+    }
+}
 class Comment {
     private final String id;
     private final String content;
@@ -204,105 +847,380 @@ class Comment {
     private final Date timestamp;
 
     public Comment(String content, User author) {
-        this.id = UUID.randomUUID().toString();
+        this(UUID.randomUUID().toString(), content, author, new Date());
+    }
+
+    // Restores a comment with its original id and time, e.g. on bulk import
+    Comment(String id, String content, User author, Date timestamp) {
+        this.id = id;
         this.content = content;
         this.author = author;
-        this.timestamp = new Date();
+        this.timestamp = timestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getContent() {
+        return content;
     }
 
     public User getAuthor() {
         return author;
     }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
 }
 class Tag {
+    private final int id;
     private final String name;
 
-    public Tag(String name) { this.name = name; }
+    // Use Tag.of so every name maps to one shared instance
+    Tag(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
 
+    public static Tag of(String name) { return TagRegistry.getInstance().intern(name); }
+
+    public int getId() { return id; }
     public String getName() { return name; }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Tag && ((Tag) o).id == id);
+    }
+
+    @Override
+    public int hashCode() { return Integer.hashCode(id); }
+
+    @Override
+    public String toString() { return name; }
+}
+
+/**
+ * Global tag dictionary: case-folded name to one interned Tag with a dense int id.
+ * Dense ids let entities keep their tags as a small BitSet.
+ */
+class TagRegistry {
+    private static final TagRegistry INSTANCE = new TagRegistry();
+
+    private final Map<String, Tag> byName = new ConcurrentHashMap<>();
+    private final List<Tag> byId = new CopyOnWriteArrayList<>();
+
+    private TagRegistry() {}
+
+    public static TagRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public Tag intern(String name) {
+        String key = name.trim().toLowerCase(Locale.ROOT);
+        Tag tag = byName.get(key);
+        return tag != null ? tag : register(key);
+    }
+
+    public Tag get(int id) {
+        return byId.get(id);
+    }
+
+    public BitSet toBits(Collection<Tag> tags) {
+        BitSet bits = new BitSet();
+        for (Tag tag : tags) {
+            bits.set(tag.getId());
+        }
+        return bits;
+    }
+
+    public Set<Tag> fromBits(BitSet bits) {
+        Set<Tag> tags = new LinkedHashSet<>();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            tags.add(byId.get(id));
+        }
+        return tags;
+    }
+
+    private synchronized Tag register(String key) {
+        Tag tag = byName.get(key);
+        if (tag == null) {
+            tag = new Tag(byId.size(), key);
+            byId.add(tag);
+            byName.put(key, tag);
+        }
+        return tag;
+    }
+}
+
+/**
+ * Tag to entity posting index. Each entity gets a dense ordinal and each tag a BitSet of
+ * ordinals, so AND/OR filters over several tags are word-wise bit operations.
+ */
+class TagIndex<T> {
+    private final Function<T, String> idOf;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<T> entities = new ArrayList<>();
+    private final List<BitSet> postings = new ArrayList<>(); // indexed by tag id
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public TagIndex(Function<T, String> idOf) {
+        this.idOf = idOf;
+    }
+
+    public void add(T entity, BitSet tagBits) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(idOf.apply(entity));
+            if (ordinal == null) {
+                ordinal = entities.size();
+                ordinals.put(idOf.apply(entity), ordinal);
+                entities.add(entity);
+            } else {
+                entities.set(ordinal, entity);
+            }
+            for (int tagId = tagBits.nextSetBit(0); tagId >= 0; tagId = tagBits.nextSetBit(tagId + 1)) {
+                while (postings.size() <= tagId) {
+                    postings.add(new BitSet());
+                }
+                postings.get(tagId).set(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(T entity, BitSet tagBits) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(idOf.apply(entity));
+            if (ordinal == null)
+                return;
+            entities.set(ordinal, null);
+            for (int tagId = tagBits.nextSetBit(0); tagId >= 0; tagId = tagBits.nextSetBit(tagId + 1)) {
+                postings.get(tagId).clear(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Entities carrying every one of the tags. */
+    public List<T> matchAll(Collection<Tag> tags) {
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            for (Tag tag : tags) {
+                BitSet posting = postingOf(tag);
+                if (posting == null)
+                    return new ArrayList<>();
+                if (result == null) {
+                    result = (BitSet) posting.clone();
+                } else {
+                    result.and(posting);
+                }
+            }
+            return result == null ? new ArrayList<>() : collect(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Entities carrying at least one of the tags. */
+    public List<T> matchAny(Collection<Tag> tags) {
+        lock.readLock().lock();
+        try {
+            BitSet result = new BitSet();
+            for (Tag tag : tags) {
+                BitSet posting = postingOf(tag);
+                if (posting != null) {
+                    result.or(posting);
+                }
+            }
+            return collect(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet postingOf(Tag tag) {
+        return tag.getId() < postings.size() ? postings.get(tag.getId()) : null;
+    }
+
+    private List<T> collect(BitSet ordinalBits) {
+        List<T> result = new ArrayList<>(ordinalBits.cardinality());
+        for (int ordinal = ordinalBits.nextSetBit(0); ordinal >= 0; ordinal = ordinalBits.nextSetBit(ordinal + 1)) {
+            result.add(entities.get(ordinal));
+        }
+        return result;
+    }
 }
 
 class Task {
     private final String id;
-    private String title;
-    private String description;
-    private LocalDate dueDate;
-    private TaskPriority priority;
+    private final LocalDate dueDate;
     private final User createdBy;
-    private User assignee;
-    private TaskState currentState;
-    private final Set<Tag> tags;
+    // Title, description, priority, assignee and state, published as one versioned value
+    private final AtomicReference<Snapshot> snapshot;
+    private final BitSet tagBits;
     private final List<Comment> comments;
     private final List<Task> subtasks;
-    private final List<ActivityLog> activityLogs;
+    private volatile Task parent;
+    private final AtomicReference<TaskRollup> rollup;
+    private long lastLogOffset = ActivityLogStore.NO_OFFSET;
     private final List<TaskObserver> observers;
 
     private Task(TaskBuilder builder) {
         this.id = builder.id;
-        this.title = builder.title;
-        this.description = builder.description;
         this.dueDate = builder.dueDate;
-        this.priority = builder.priority;
         this.createdBy = builder.createdBy;
-        this.assignee = builder.assignee;
-        this.tags = builder.tags;
-        this.currentState = new TodoState(); // Initial state
-        this.comments = new ArrayList<>();
-        this.subtasks = new ArrayList<>();
-        this.activityLogs = new ArrayList<>();
-        this.observers = new ArrayList<>();
-        addLog("Task created with title: " + title);
-    }
-
-    public synchronized void setAssignee(User user) {
-        this.assignee = user;
+        this.snapshot = new AtomicReference<>(new Snapshot(1, builder.title, builder.description,
+                builder.priority, builder.assignee, TaskState.of(builder.status))); // Initial state
+        this.tagBits = TagRegistry.getInstance().toBits(builder.tags);
+        this.comments = new CopyOnWriteArrayList<>();
+        this.subtasks = new CopyOnWriteArrayList<>();
+        this.observers = new CopyOnWriteArrayList<>();
+        this.rollup = new AtomicReference<>(TaskRollup.of(this));
+        addLog("Task created with title: " + builder.title);
+    }
+
+    public void setAssignee(User user) {
+        mutate(s -> s.withAssignee(user));
         addLog("Assigned to " + user.getName());
         notifyObservers("assignee");
     }
 
-    public synchronized void updatePriority(TaskPriority priority) {
-        this.priority = priority;
+    public void updatePriority(TaskPriority priority) {
+        mutate(s -> s.withPriority(priority));
         notifyObservers("priority");
     }
 
-    public synchronized void addComment(Comment comment) {
+    public void addComment(Comment comment) {
+        restoreComment(comment);
+        notifyObservers("comment");
+    }
+
+    // Adds without notifying observers; used directly by bulk import
+    void restoreComment(Comment comment) {
         comments.add(comment);
         addLog("Comment added by " + comment.getAuthor().getName());
-        notifyObservers("comment");
     }
 
-    public synchronized void addSubtask(Task subtask) {
+    public List<Comment> getComments() { return Collections.unmodifiableList(comments); }
+
+    public void addSubtask(Task subtask) {
+        linkSubtask(subtask);
+        notifyObservers("subtask_added");
+    }
+
+    // Links without notifying observers; used directly by bulk import.
+    // Not synchronized on this task: the rollup walk below takes ancestor locks one at a time,
+    // and holding this one meanwhile could deadlock against a grandparent linking this task.
+    void linkSubtask(Task subtask) {
+        TaskRollup subtree;
+        // Same lock as a rollup walk stepping through the subtask; see applyToRollups
+        synchronized (subtask) {
+            subtask.parent = this;
+            subtree = subtask.getRollup();
+        }
         subtasks.add(subtask);
+        applyToRollups(r -> r.plus(subtree));
         addLog("Subtask added: " + subtask.getTitle());
-        notifyObservers("subtask_added");
     }
 
     // --- State Pattern Methods ---
     public void setState(TaskState state) {
-        this.currentState = state;
+        Snapshot previous = snapshot.getAndUpdate(s -> s.withState(state).nextVersion());
+        TaskStatus from = previous.getStatus();
+        applyToRollups(r -> r.withStatusChange(from, state.getStatus()));
         addLog("Status changed to: " + state.getStatus());
         notifyObservers("status");
     }
-    public void startProgress() { currentState.startProgress(this); }
-    public void completeTask() { currentState.completeTask(this); }
-    public void reopenTask() { currentState.reopenTask(this); }
+    public void startProgress() { snapshot.get().state.startProgress(this); }
+    public void completeTask() { snapshot.get().state.completeTask(this); }
+    public void reopenTask() { snapshot.get().state.reopenTask(this); }
 
-    // --- Observer Pattern Methods ---
-    public void addObserver(TaskObserver observer) { observers.add(observer); }
-    public void removeObserver(TaskObserver observer) { observers.remove(observer); }
-    public void notifyObservers(String changeType) {
-        for (TaskObserver observer : observers) {
+    // --- Optimistic Concurrency ---
+
+    /** Current immutable view of the task; never blocks. */
+    public Snapshot getSnapshot() { return snapshot.get(); }
+
+    /**
+     * Applies {@code mutation} only if the task is still at {@code expectedVersion}.
+     * A single CAS attempt is made, so concurrent editors get a conflict right away
+     * instead of waiting. Status is not editable here; use the state transitions.
+     */
+    public Snapshot update(long expectedVersion, UnaryOperator<Snapshot> mutation) {
+        Snapshot current = snapshot.get();
+        if (current.getVersion() == expectedVersion) {
+            Snapshot next = mutation.apply(current).withState(current.state).withVersion(expectedVersion + 1);
+            if (snapshot.compareAndSet(current, next)) {
+                addLog("Updated to version " + next.getVersion());
+                notifyObservers("update");
+                return next;
+            }
+        }
+        throw new ConcurrentModificationException("Task " + id + " is no longer at version " + expectedVersion);
+    }
+
+    // Unconditional update for the plain setters: retries the CAS until it lands
+    private Snapshot mutate(UnaryOperator<Snapshot> change) {
+        return snapshot.updateAndGet(s -> change.apply(s).nextVersion());
+    }
+
+    // --- Observer Pattern Methods ---
+    public void addObserver(TaskObserver observer) { observers.add(observer); }
+    public void removeObserver(TaskObserver observer) { observers.remove(observer); }
+    public void notifyObservers(String changeType) {
+        for (TaskObserver observer : observers) {
             observer.update(this, changeType);
         }
     }
-    public void addLog(String logDescription) {
-        this.activityLogs.add(new ActivityLog(logDescription));
+    public synchronized void addLog(String logDescription) {
+        this.lastLogOffset = ActivityLogStore.getInstance().append(lastLogOffset, logDescription);
+    }
+
+    /** Activity history, newest first, streamed from the shared log store. */
+    public synchronized Iterable<ActivityLog> getActivityLogs() {
+        long offset = lastLogOffset;
+        return () -> ActivityLogStore.getInstance().history(offset);
     }
 
     public boolean isComposite() { return !subtasks.isEmpty(); }
 
+    public List<Task> getSubtasks() { return subtasks; }
+
+    public Task getParent() { return parent; }
+
+    // --- Rollups ---
+
+    /** Aggregate over this task and its whole subtask tree, kept up to date incrementally. */
+    public TaskRollup getRollup() { return rollup.get(); }
+
+    /*
+     * Applies a change to this task's rollup and every ancestor's: O(depth), never a tree walk.
+     * Each step locks one task while it updates that rollup and reads the parent, and linking
+     * holds the same lock while it sets the parent and snapshots the subtree. So at whatever
+     * depth a change starts, it reaches a newly linked parent either inside the snapshot or by
+     * this walk, never both. Only one lock is held at a time, so the walk cannot deadlock.
+     */
+    private void applyToRollups(UnaryOperator<TaskRollup> change) {
+        Task task = this;
+        while (task != null) {
+            Task next;
+            synchronized (task) {
+                task.rollup.updateAndGet(change);
+                next = task.parent;
+            }
+            task = next;
+        }
+    }
+
     public void display(String indent) {
-        System.out.println(indent + "- " + title + " [" + getStatus() + ", " + priority + ", Due: " + dueDate + "]");
+        Snapshot current = snapshot.get();
+        System.out.println(indent + "- " + current.getTitle() + " [" + current.getStatus() + ", "
+                + current.getPriority() + ", Due: " + dueDate + "]");
         if (isComposite()) {
             for (Task subtask : subtasks) {
                 subtask.display(indent + "  ");
@@ -315,47 +1233,112 @@ class Task {
         return id;
     }
     public String getTitle() {
-        return title;
+        return snapshot.get().getTitle();
     }
     public String getDescription() {
-        return description;
+        return snapshot.get().getDescription();
     }
     public TaskPriority getPriority() {
-        return priority;
+        return snapshot.get().getPriority();
     }
     public LocalDate getDueDate() {
         return dueDate;
     }
     public User getAssignee() {
-        return assignee;
+        return snapshot.get().getAssignee();
+    }
+    public User getCreatedBy() {
+        return createdBy;
+    }
+    public Set<Tag> getTags() {
+        return TagRegistry.getInstance().fromBits(tagBits);
+    }
+    public boolean hasTag(Tag tag) {
+        return tagBits.get(tag.getId());
+    }
+    BitSet getTagBits() {
+        return tagBits;
     }
     public void setTitle(String title) {
-        this.title = title;
+        mutate(s -> s.withTitle(title));
     }
     public void setDescription(String description) {
-        this.description = description;
+        mutate(s -> s.withDescription(description));
     }
 
     public TaskStatus getStatus() {
-        return currentState.getStatus();
+        return snapshot.get().getStatus();
+    }
+
+    // --- Versioned Snapshot ---
+    public static final class Snapshot {
+        private final long version;
+        private final String title;
+        private final String description;
+        private final TaskPriority priority;
+        private final User assignee;
+        private final TaskState state;
+
+        private Snapshot(long version, String title, String description, TaskPriority priority,
+                         User assignee, TaskState state) {
+            this.version = version;
+            this.title = title;
+            this.description = description;
+            this.priority = priority;
+            this.assignee = assignee;
+            this.state = state;
+        }
+
+        public Snapshot withTitle(String title) {
+            return new Snapshot(version, title, description, priority, assignee, state);
+        }
+        public Snapshot withDescription(String description) {
+            return new Snapshot(version, title, description, priority, assignee, state);
+        }
+        public Snapshot withPriority(TaskPriority priority) {
+            return new Snapshot(version, title, description, priority, assignee, state);
+        }
+        public Snapshot withAssignee(User assignee) {
+            return new Snapshot(version, title, description, priority, assignee, state);
+        }
+
+        // Only the owning task moves the state and the version
+        private Snapshot withState(TaskState state) {
+            return new Snapshot(version, title, description, priority, assignee, state);
+        }
+        private Snapshot withVersion(long version) {
+            return new Snapshot(version, title, description, priority, assignee, state);
+        }
+        private Snapshot nextVersion() {
+            return withVersion(version + 1);
+        }
+
+        public long getVersion() { return version; }
+        public String getTitle() { return title; }
+        public String getDescription() { return description; }
+        public TaskPriority getPriority() { return priority; }
+        public User getAssignee() { return assignee; }
+        public TaskStatus getStatus() { return state.getStatus(); }
     }
 
     // --- Builder Pattern ---
     public static class TaskBuilder {
-        private final String id;
+        private String id;
         private String title;
         private String description = "";
         private LocalDate dueDate;
         private TaskPriority priority;
         private User createdBy;
         private User assignee;
-        private Set<Tag> tags;
+        private Set<Tag> tags = Set.of();
+        private TaskStatus status = TaskStatus.TODO;
 
         public TaskBuilder(String title) {
-            this.id = UUID.randomUUID().toString();
             this.title = title;
         }
 
+        public TaskBuilder id(String id) { this.id = id; return this; }
+        public TaskBuilder status(TaskStatus status) { this.status = status; return this; }
         public TaskBuilder description(String description) { this.description = description; return this; }
         public TaskBuilder dueDate(LocalDate dueDate) { this.dueDate = dueDate; return this; }
         public TaskBuilder priority(TaskPriority priority) { this.priority = priority; return this; }
@@ -364,6 +1347,9 @@ class Task {
         public TaskBuilder tags(Set<Tag> tags) { this.tags = tags; return this; }
 
         public Task build() {
+            if (id == null) {
+                id = UUID.randomUUID().toString();
+            }
             return new Task(this);
         }
     }
@@ -374,7 +1360,11 @@ class TaskList {
     private final List<Task> tasks;
 
     public TaskList(String name) {
-        this.id = UUID.randomUUID().toString();
+        this(UUID.randomUUID().toString(), name);
+    }
+
+    TaskList(String id, String name) {
+        this.id = id;
         this.name = name;
         this.tasks = new CopyOnWriteArrayList<>();
     }
@@ -406,7 +1396,11 @@ class User {
     private final String email;
 
     public User(String name, String email) {
-        this.id = UUID.randomUUID().toString();
+        this(UUID.randomUUID().toString(), name, email);
+    }
+
+    User(String id, String name, String email) {
+        this.id = id;
         this.name = name;
         this.email = email;
     }
@@ -424,6 +1418,64 @@ class User {
         return name;
     }
 }
+/**
+ * Immutable aggregate over a subtask tree: task counts by status and the earliest due date.
+ */
+class TaskRollup {
+    private final int total;
+    private final int[] statusCounts;
+    private final LocalDate earliestDueDate;
+
+    private TaskRollup(int total, int[] statusCounts, LocalDate earliestDueDate) {
+        this.total = total;
+        this.statusCounts = statusCounts;
+        this.earliestDueDate = earliestDueDate;
+    }
+
+    /** Rollup of a single task, ignoring its subtasks. */
+    public static TaskRollup of(Task task) {
+        int[] counts = new int[TaskStatus.values().length];
+        counts[task.getStatus().ordinal()] = 1;
+        return new TaskRollup(1, counts, task.getDueDate());
+    }
+
+    public TaskRollup plus(TaskRollup other) {
+        int[] counts = statusCounts.clone();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.statusCounts[i];
+        }
+        return new TaskRollup(total + other.total, counts, earlier(earliestDueDate, other.earliestDueDate));
+    }
+
+    public TaskRollup withStatusChange(TaskStatus from, TaskStatus to) {
+        int[] counts = statusCounts.clone();
+        counts[from.ordinal()]--;
+        counts[to.ordinal()]++;
+        return new TaskRollup(total, counts, earliestDueDate);
+    }
+
+    public int getTotal() { return total; }
+    public int getCount(TaskStatus status) { return statusCounts[status.ordinal()]; }
+    public LocalDate getEarliestDueDate() { return earliestDueDate; }
+
+    public double getPercentDone() {
+        return 100.0 * getCount(TaskStatus.DONE) / total;
+    }
+
+    private static LocalDate earlier(LocalDate a, LocalDate b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.isBefore(b) ? a : b;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.0f%% done (%d TODO, %d IN_PROGRESS, %d DONE), earliest due: %s",
+                getPercentDone(), getCount(TaskStatus.TODO), getCount(TaskStatus.IN_PROGRESS),
+                getCount(TaskStatus.DONE), earliestDueDate);
+    }
+}
+
 interface TaskObserver {
     void update(Task task, String changeType);
 }
@@ -434,11 +1486,112 @@ class ActivityLogger implements TaskObserver {
     }
 }
 
+class TaskChangeEvent {
+    private final Task task;
+    private final String changeType;
+
+    public TaskChangeEvent(Task task, String changeType) {
+        this.task = task;
+        this.changeType = changeType;
+    }
+
+    public Task getTask() { return task; }
+    public String getChangeType() { return changeType; }
+}
+
+/**
+ * Asynchronous observer that fans task changes out to its subscribers.
+ * {@link #update} only appends to a lock-free queue per subscriber, so the task's
+ * (synchronized) write path never waits on observer I/O. Each subscriber is drained
+ * on a pool thread in batches, and repeated changes of the same type to the same task
+ * within a batch are delivered once.
+ */
+class TaskEventBus implements TaskObserver {
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService drainers = Executors.newCachedThreadPool();
+
+    public void subscribe(TaskObserver observer) {
+        subscriptions.add(new Subscription(observer));
+    }
+
+    public void unsubscribe(TaskObserver observer) {
+        subscriptions.removeIf(subscription -> subscription.observer == observer);
+    }
+
+    @Override
+    public void update(Task task, String changeType) {
+        TaskChangeEvent event = new TaskChangeEvent(task, changeType);
+        for (Subscription subscription : subscriptions) {
+            subscription.publish(event);
+        }
+    }
+
+    public void shutdown() {
+        drainers.shutdown();
+    }
+
+    private class Subscription {
+        private final TaskObserver observer;
+        private final Queue<TaskChangeEvent> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+
+        Subscription(TaskObserver observer) {
+            this.observer = observer;
+        }
+
+        void publish(TaskChangeEvent event) {
+            queue.offer(event);
+            if (draining.compareAndSet(false, true)) {
+                drainers.execute(this::drain);
+            }
+        }
+
+        // At most one drain runs per subscriber, so it sees events in publish order
+        private void drain() {
+            do {
+                while (!queue.isEmpty()) {
+                    deliver(nextBatch());
+                }
+                draining.set(false);
+            } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        private Collection<TaskChangeEvent> nextBatch() {
+            Map<String, TaskChangeEvent> batch = new LinkedHashMap<>();
+            TaskChangeEvent event;
+            while (batch.size() < MAX_BATCH_SIZE && (event = queue.poll()) != null) {
+                batch.putIfAbsent(event.getTask().getId() + ":" + event.getChangeType(), event);
+            }
+            return batch.values();
+        }
+
+        private void deliver(Collection<TaskChangeEvent> batch) {
+            for (TaskChangeEvent event : batch) {
+                try {
+                    observer.update(event.getTask(), event.getChangeType());
+                } catch (RuntimeException e) {
+                    System.err.println("Task observer failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
+
 interface TaskState {
     void startProgress(Task task);
     void completeTask(Task task);
     void reopenTask(Task task);
     TaskStatus getStatus();
+
+    static TaskState of(TaskStatus status) {
+        switch (status) {
+            case IN_PROGRESS: return new InProgressState();
+            case DONE: return new DoneState();
+            default: return new TodoState();
+        }
+    }
 }
 class TodoState implements TaskState {
     @Override
@@ -490,36 +1643,184 @@ class DoneState implements TaskState {
 }
 interface TaskSortStrategy {
     void sort(List<Task> tasks);
+
+    Comparator<Task> comparator();
+
+    /** Position just after the task, with its sort key frozen as it is now. */
+    PageCursor<?> cursorAfter(Task task);
+
+    /**
+     * Returns the first {@code limit} tasks that come after {@code cursor} (exclusive).
+     * Uses a bounded heap, so only k tasks are held at a time: O(n log k).
+     * Ties are broken by task id so pages stay stable across calls.
+     * Pass cursorAfter(last task of the previous page), or null for the first page.
+     */
+    default List<Task> topK(Iterable<Task> tasks, int limit, PageCursor<?> cursor) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit must be positive.");
+
+        Comparator<Task> order = comparator().thenComparing(Task::getId);
+        // Max-heap on the page order: the root is the worst task currently kept
+        PriorityQueue<Task> heap = new PriorityQueue<>(limit, order.reversed());
+        for (Task task : tasks) {
+            if (cursor != null && !cursor.precedes(task))
+                continue;
+            if (heap.size() < limit) {
+                heap.offer(task);
+            } else if (order.compare(task, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(task);
+            }
+        }
+
+        List<Task> page = new ArrayList<>(heap);
+        page.sort(order);
+        return page;
+    }
+}
+/**
+ * Immutable paging position: the sort key of the last task on a page, copied when the
+ * page was served, plus its id to break ties. Editing that task afterwards does not
+ * move the page boundary.
+ */
+final class PageCursor<K> {
+    private final K key;
+    private final String taskId;
+    private final Function<Task, K> keyOf;
+    private final Comparator<K> order;
+
+    PageCursor(Task task, Function<Task, K> keyOf, Comparator<K> order) {
+        this.key = keyOf.apply(task);
+        this.taskId = task.getId();
+        this.keyOf = keyOf;
+        this.order = order;
+    }
+
+    /** Whether the task comes strictly after this position. */
+    public boolean precedes(Task task) {
+        int byKey = order.compare(key, keyOf.apply(task));
+        return byKey != 0 ? byKey < 0 : taskId.compareTo(task.getId()) < 0;
+    }
 }
 class SortByPriority implements TaskSortStrategy {
+    // Same order as before: priorities compared in reverse enum order
+    private static final Comparator<TaskPriority> ORDER = Comparator.reverseOrder();
+
     @Override
     public void sort(List<Task> tasks) {
-        // Higher priority (lower enum ordinal) comes first
-        tasks.sort(Comparator.comparing(Task::getPriority).reversed());
+        tasks.sort(comparator());
+    }
+
+    @Override
+    public Comparator<Task> comparator() {
+        return Comparator.comparing(Task::getPriority, ORDER);
+    }
+
+    @Override
+    public PageCursor<?> cursorAfter(Task task) {
+        return new PageCursor<>(task, Task::getPriority, ORDER);
     }
 }
 class SortByDueDate implements TaskSortStrategy {
+    private static final Comparator<LocalDate> ORDER = Comparator.naturalOrder();
+
     @Override
     public void sort(List<Task> tasks) {
-        tasks.sort(Comparator.comparing(Task::getDueDate));
+        tasks.sort(comparator());
+    }
+
+    @Override
+    public Comparator<Task> comparator() {
+        return Comparator.comparing(Task::getDueDate, ORDER);
+    }
+
+    @Override
+    public PageCursor<?> cursorAfter(Task task) {
+        return new PageCursor<>(task, Task::getDueDate, ORDER);
     }
 }
 
 class Reminder {
+    private final long id;
+    private final String taskId;
+    private final String userId;
+    private final long fireAtMillis;
     private final LocalDateTime remindAt;
+    private final String taskTitle;
+    private final String userName;
+    private final LocalDate dueDate;
     private final Task task;
     private final User user;
 
-    public Reminder(Task task, User user, LocalDateTime remindAt) {
+    // Timing wheel bookkeeping, only touched by the timer thread
+    long deadlineTick;
+    Reminder prev;
+    Reminder next;
+    TimerBucket bucket;
+    private volatile boolean cancelled;
+
+    public Reminder(long id, Task task, User user, LocalDateTime remindAt) {
+        this(id, task.getId(), user.getId(), toEpochMillis(remindAt),
+                task.getTitle(), user.getName(), task.getDueDate(), task, user);
+    }
+
+    // Replayed from the store: task and user are resolved again when the reminder fires,
+    // falling back to the persisted title, name and due date if they are not loaded
+    Reminder(long id, String taskId, String userId, long fireAtMillis,
+             String taskTitle, String userName, LocalDate dueDate) {
+        this(id, taskId, userId, fireAtMillis, taskTitle, userName, dueDate, null, null);
+    }
+
+    private Reminder(long id, String taskId, String userId, long fireAtMillis,
+                     String taskTitle, String userName, LocalDate dueDate, Task task, User user) {
+        this.id = id;
+        this.taskId = taskId;
+        this.userId = userId;
+        this.fireAtMillis = fireAtMillis;
+        this.remindAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(fireAtMillis), ZoneId.systemDefault());
+        this.taskTitle = taskTitle;
+        this.userName = userName;
+        this.dueDate = dueDate;
         this.task = task;
         this.user = user;
-        this.remindAt = remindAt;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public long getFireAtMillis() {
+        return fireAtMillis;
     }
 
     public LocalDateTime getRemindAt() {
         return remindAt;
     }
 
+    public String getTaskTitle() {
+        return taskTitle;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
     public Task getTask() {
         return task;
     }
@@ -527,6 +1828,467 @@ class Reminder {
     public User getUser() {
         return user;
     }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void markCancelled() {
+        this.cancelled = true;
+    }
+}
+
+/**
+ * Intrusive doubly linked list of reminders sharing one wheel slot.
+ * Reminders are their own list nodes, so add and remove are O(1) and allocation free.
+ */
+class TimerBucket {
+    private Reminder head;
+    private Reminder tail;
+
+    void add(Reminder reminder) {
+        reminder.bucket = this;
+        reminder.prev = tail;
+        reminder.next = null;
+        if (tail == null) {
+            head = reminder;
+        } else {
+            tail.next = reminder;
+        }
+        tail = reminder;
+    }
+
+    void remove(Reminder reminder) {
+        if (reminder.prev == null) {
+            head = reminder.next;
+        } else {
+            reminder.prev.next = reminder.next;
+        }
+        if (reminder.next == null) {
+            tail = reminder.prev;
+        } else {
+            reminder.next.prev = reminder.prev;
+        }
+        reminder.prev = null;
+        reminder.next = null;
+        reminder.bucket = null;
+    }
+
+    /** Detaches every reminder and returns the old head. */
+    Reminder clear() {
+        Reminder first = head;
+        head = null;
+        tail = null;
+        return first;
+    }
+}
+
+/**
+ * Hierarchical timing wheel (4 levels x 64 slots).
+ * Level 0 slots are one tick wide, each higher level slot spans a whole lower wheel.
+ * When a lower wheel wraps around, the matching higher slot is cascaded down.
+ * Reminders beyond the top wheel wait in an overflow bucket until it wraps.
+ *
+ * Other threads only enqueue schedule/cancel requests; all wheel state is owned by
+ * the thread calling {@link #advance(long)}, so no locking is needed.
+ */
+class HierarchicalTimingWheel {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final TimerBucket[][] wheels = new TimerBucket[LEVELS][WHEEL_SIZE];
+    private final TimerBucket overflow = new TimerBucket();
+    private final Queue<Reminder> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<Reminder> pendingCancels = new ConcurrentLinkedQueue<>();
+    private final Consumer<List<Reminder>> onExpired;
+    private long currentTick;
+
+    public HierarchicalTimingWheel(long tickMillis, long startMillis, Consumer<List<Reminder>> onExpired) {
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.onExpired = onExpired;
+        for (TimerBucket[] wheel : wheels) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheel[slot] = new TimerBucket();
+            }
+        }
+    }
+
+    public void schedule(Reminder reminder, long fireAtMillis) {
+        // Round up so a reminder never fires early
+        reminder.deadlineTick = Math.floorDiv(fireAtMillis - startMillis + tickMillis - 1, tickMillis);
+        pendingAdds.offer(reminder);
+    }
+
+    public void cancel(Reminder reminder) {
+        reminder.markCancelled();
+        pendingCancels.offer(reminder);
+    }
+
+    /**
+     * Moves the wheel forward to the given time and hands every reminder that came due
+     * to the expiry callback as one batch. Must always be called from the same thread.
+     */
+    public void advance(long nowMillis) {
+        List<Reminder> expired = new ArrayList<>();
+
+        Reminder reminder;
+        while ((reminder = pendingAdds.poll()) != null) {
+            if (!reminder.isCancelled()) {
+                place(reminder, expired);
+            }
+        }
+        while ((reminder = pendingCancels.poll()) != null) {
+            if (reminder.bucket != null) {
+                reminder.bucket.remove(reminder);
+            }
+        }
+
+        long targetTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade(expired);
+            drain(wheels[0][(int) (currentTick & WHEEL_MASK)], expired);
+        }
+
+        if (!expired.isEmpty()) {
+            onExpired.accept(expired);
+        }
+    }
+
+    private void place(Reminder reminder, List<Reminder> expired) {
+        long deadline = reminder.deadlineTick;
+        if (deadline <= currentTick) {
+            expired.add(reminder);
+            return;
+        }
+        // Lowest level whose enclosing higher slot already contains the current tick
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * (level + 1);
+            if ((deadline >>> shift) == (currentTick >>> shift)) {
+                int slot = (int) ((deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                wheels[level][slot].add(reminder);
+                return;
+            }
+        }
+        overflow.add(reminder);
+    }
+
+    private void cascade(List<Reminder> expired) {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            replace(wheels[level][(int) ((currentTick >>> shift) & WHEEL_MASK)], expired);
+        }
+        if ((currentTick & ((1L << (WHEEL_BITS * LEVELS)) - 1)) == 0) {
+            replace(overflow, expired);
+        }
+    }
+
+    private void replace(TimerBucket bucket, List<Reminder> expired) {
+        Reminder reminder = bucket.clear();
+        while (reminder != null) {
+            Reminder next = reminder.next;
+            reminder.prev = null;
+            reminder.next = null;
+            reminder.bucket = null;
+            place(reminder, expired);
+            reminder = next;
+        }
+    }
+
+    private void drain(TimerBucket bucket, List<Reminder> expired) {
+        Reminder reminder = bucket.clear();
+        while (reminder != null) {
+            Reminder next = reminder.next;
+            reminder.prev = null;
+            reminder.next = null;
+            reminder.bucket = null;
+            if (!reminder.isCancelled()) {
+                expired.add(reminder);
+            }
+            reminder = next;
+        }
+    }
+}
+
+/**
+ * Append-only reminder log, split into one file per fire-time window.
+ * A SET record holds the reminder id, fire time, task and user ids, and the task title,
+ * user name and due date the reminder is delivered with, so a reminder replayed after a
+ * restart can fire before (or without) its task being loaded again. A cancel/fire marker
+ * is a kind byte and the id. A record torn by a crash mid-append is cut off when its
+ * window is reopened for writing, so new records never land behind it.
+ * Only the window file names are read on startup; a window's records are loaded when it
+ * comes within the look-ahead horizon. The directory is created on the first write.
+ */
+class ReminderStore {
+    private static final byte SET = 0;
+    private static final byte DONE = 1;
+    private static final String FILE_PREFIX = "window-";
+    private static final String FILE_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long windowMillis;
+    private final NavigableSet<Long> unloadedWindows = new ConcurrentSkipListSet<>();
+    private final Set<Long> loadedWindows = ConcurrentHashMap.newKeySet();
+
+    // Open append channels, one per recently written window; guarded by this
+    private final Map<Long, FileChannel> channels = new HashMap<>();
+    private final Set<Long> dirtyWindows = new HashSet<>();
+    private long appendedSeq;
+
+    // Group commit: one caller forces every dirty channel on behalf of all waiting callers
+    private final Object syncLock = new Object();
+    private long syncedSeq;
+
+    public ReminderStore(Path directory, long windowMillis) {
+        this.directory = directory;
+        this.windowMillis = windowMillis;
+        if (!Files.isDirectory(directory))
+            return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                unloadedWindows.add(Long.parseLong(
+                        name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open reminder store " + directory, e);
+        }
+    }
+
+    /**
+     * Persists a new reminder. Returns true if its window is already loaded, meaning the
+     * caller must schedule it now; otherwise it is picked up when the window is loaded.
+     * The record is written but not yet forced; call {@link #sync()} to make it durable.
+     */
+    public synchronized boolean append(Reminder reminder, long horizonMillis) {
+        long window = windowOf(reminder.getFireAtMillis());
+        boolean newWindow = !loadedWindows.contains(window) && !unloadedWindows.contains(window);
+        if (newWindow && window * windowMillis <= horizonMillis) {
+            loadedWindows.add(window); // nothing on disk to replay
+        }
+
+        LocalDate dueDate = reminder.getDueDate();
+        write(window, out -> {
+            out.writeByte(SET);
+            out.writeLong(reminder.getId());
+            out.writeLong(reminder.getFireAtMillis());
+            out.writeUTF(reminder.getTaskId());
+            out.writeUTF(reminder.getUserId());
+            out.writeUTF(reminder.getTaskTitle());
+            out.writeUTF(reminder.getUserName());
+            out.writeBoolean(dueDate != null);
+            out.writeLong(dueDate == null ? 0 : dueDate.toEpochDay());
+        });
+
+        if (loadedWindows.contains(window))
+            return true;
+        unloadedWindows.add(window);
+        return false;
+    }
+
+    /**
+     * Marks fired or cancelled reminders so they are skipped on replay. Markers are forced
+     * with the next sync; one lost in a crash only means the reminder fires again.
+     */
+    public synchronized void markDone(List<Reminder> reminders) {
+        Map<Long, List<Reminder>> byWindow = reminders.stream()
+                .collect(Collectors.groupingBy(r -> windowOf(r.getFireAtMillis())));
+        byWindow.forEach((window, batch) -> write(window, out -> {
+            for (Reminder reminder : batch) {
+                out.writeByte(DONE);
+                out.writeLong(reminder.getId());
+            }
+        }));
+    }
+
+    /**
+     * Blocks until every record appended before the call is on disk. Callers arriving while
+     * a force is in flight wait for it and are usually covered by the next one, so concurrent
+     * appends share a single fsync per dirty window.
+     */
+    public void sync() {
+        long target;
+        synchronized (this) {
+            target = appendedSeq;
+        }
+        synchronized (syncLock) {
+            if (syncedSeq >= target)
+                return;
+            long upTo;
+            List<FileChannel> dirty = new ArrayList<>();
+            synchronized (this) {
+                upTo = appendedSeq;
+                for (long window : dirtyWindows) {
+                    dirty.add(channels.get(window));
+                }
+                dirtyWindows.clear();
+            }
+            for (FileChannel channel : dirty) {
+                try {
+                    channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // Closed concurrently, and closing forces the channel first
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot sync reminder store " + directory, e);
+                }
+            }
+            syncedSeq = upTo;
+        }
+    }
+
+    /**
+     * Loads every window starting at or before the horizon and passes its pending reminders
+     * to the callback. Windows already in the past with nothing pending are deleted, and
+     * channels of windows that ended before the previous one are closed.
+     */
+    public synchronized void loadUpTo(long horizonMillis, long nowMillis, Consumer<Reminder> callback) {
+        while (!unloadedWindows.isEmpty() && unloadedWindows.first() * windowMillis <= horizonMillis) {
+            long window = unloadedWindows.pollFirst();
+            Map<Long, Reminder> pending = read(window);
+            if (pending.isEmpty() && (window + 1) * windowMillis <= nowMillis) {
+                delete(window);
+                continue;
+            }
+            loadedWindows.add(window);
+            pending.values().forEach(callback);
+        }
+
+        // Late fire markers for an old window simply reopen its channel
+        long oldest = windowOf(nowMillis) - 1;
+        List<Long> stale = new ArrayList<>();
+        for (long window : channels.keySet()) {
+            if (window < oldest) {
+                stale.add(window);
+            }
+        }
+        stale.forEach(this::closeChannel);
+    }
+
+    /** Forces and closes every open window file. */
+    public synchronized void close() {
+        new ArrayList<>(channels.keySet()).forEach(this::closeChannel);
+    }
+
+    private Map<Long, Reminder> read(long window) {
+        Map<Long, Reminder> pending = new LinkedHashMap<>();
+        replay(window, pending);
+        return pending;
+    }
+
+    /** Applies the window's complete records to pending and returns the length they span. */
+    private long replay(long window, Map<Long, Reminder> pending) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(fileOf(window));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read reminder window " + window, e);
+        }
+        long complete = 0;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            while (true) {
+                byte kind = in.readByte();
+                long id = in.readLong();
+                if (kind == DONE) {
+                    pending.remove(id);
+                } else {
+                    long fireAtMillis = in.readLong();
+                    pending.put(id, readSet(in, id, fireAtMillis));
+                }
+                complete = bytes.length - in.available();
+            }
+        } catch (EOFException e) {
+            // End of log; a torn record from a crash mid-append ends before its last field
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read reminder window " + window, e);
+        }
+        return complete;
+    }
+
+    private static Reminder readSet(DataInputStream in, long id, long fireAtMillis) throws IOException {
+        String taskId = in.readUTF();
+        String userId = in.readUTF();
+        String taskTitle = in.readUTF();
+        String userName = in.readUTF();
+        boolean hasDueDate = in.readBoolean();
+        long dueEpochDay = in.readLong();
+        return new Reminder(id, taskId, userId, fireAtMillis,
+                taskTitle, userName, hasDueDate ? LocalDate.ofEpochDay(dueEpochDay) : null);
+    }
+
+    private void write(long window, RecordWriter writer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writer.write(new DataOutputStream(bytes));
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            FileChannel channel = channelFor(window);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write reminder window " + window, e);
+        }
+        dirtyWindows.add(window);
+        appendedSeq++;
+    }
+
+    private FileChannel channelFor(long window) throws IOException {
+        FileChannel channel = channels.get(window);
+        if (channel != null)
+            return channel;
+        Files.createDirectories(directory);
+        channel = FileChannel.open(fileOf(window), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (channel.size() > 0) {
+            long complete = replay(window, new HashMap<>());
+            if (complete < channel.size()) {
+                channel.truncate(complete);
+            }
+        }
+        channels.put(window, channel);
+        return channel;
+    }
+
+    private void closeChannel(long window) {
+        FileChannel channel = channels.remove(window);
+        dirtyWindows.remove(window);
+        if (channel == null)
+            return;
+        try (channel) {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close reminder window " + window, e);
+        }
+    }
+
+    private void delete(long window) {
+        closeChannel(window);
+        try {
+            Files.deleteIfExists(fileOf(window));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete reminder window " + window, e);
+        }
+    }
+
+    private long windowOf(long fireAtMillis) {
+        return Math.floorDiv(fireAtMillis, windowMillis);
+    }
+
+    private Path fileOf(long window) {
+        return directory.resolve(FILE_PREFIX + window + FILE_SUFFIX);
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
 }
 
 /**
@@ -534,20 +2296,60 @@ class Reminder {
  */
 class ReminderService {
 
-    private static final ReminderService INSTANCE = new ReminderService();
+    private static final long TICK_MILLIS = 100;
+    private static final int DELIVERY_BATCH_SIZE = 256;
+    private static final long WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long LOAD_AHEAD_MILLIS = 2 * WINDOW_MILLIS;
+    private static final long PRELOAD_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static Path storeDirectory;
+    private static ReminderService instance;
     private final ScheduledExecutorService scheduler =
             Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService deliveryPool =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final HierarchicalTimingWheel wheel =
+            new HierarchicalTimingWheel(TICK_MILLIS, System.currentTimeMillis(), this::dispatch);
+    private final Map<Long, Reminder> scheduled = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(System.currentTimeMillis() << 20);
+    private final ReminderStore store;
+
+    private ReminderService(Path storeDirectory) {
+        this.store = new ReminderStore(storeDirectory, WINDOW_MILLIS);
+        preload();
+
+        // The timer thread only advances the wheel; delivery and disk reads run on the worker pool
+        scheduler.scheduleAtFixedRate(() -> wheel.advance(System.currentTimeMillis()),
+                TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(() -> deliveryPool.execute(this::preload),
+                PRELOAD_INTERVAL_MILLIS, PRELOAD_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
 
-    private ReminderService() {}
+    /**
+     * Sets the directory reminders are persisted in. Must be called before the first
+     * getInstance(); nothing is created on disk until the first reminder is set.
+     */
+    public static synchronized void configure(Path directory) {
+        if (instance != null) {
+            throw new IllegalStateException("ReminderService is already running on " + storeDirectory);
+        }
+        storeDirectory = directory;
+    }
 
-    public static ReminderService getInstance() {
-        return INSTANCE;
+    public static synchronized ReminderService getInstance() {
+        if (instance == null) {
+            if (storeDirectory == null) {
+                throw new IllegalStateException("ReminderService.configure(directory) must be called first");
+            }
+            instance = new ReminderService(storeDirectory);
+        }
+        return instance;
     }
 
     /**
      * Schedule a reminder
      */
-    public void setReminder(Task task, User user, LocalDateTime remindAt) {
+    public Reminder setReminder(Task task, User user, LocalDateTime remindAt) {
 
         long delayMillis = Duration.between(LocalDateTime.now(), remindAt).toMillis();
 
@@ -555,18 +2357,76 @@ class ReminderService {
             throw new IllegalArgumentException("Reminder time must be in the future");
         }
 
-        Reminder reminder = new Reminder(task, user, remindAt);
+        Reminder reminder = new Reminder(nextId.incrementAndGet(), task, user, remindAt);
+        boolean loaded = store.append(reminder, System.currentTimeMillis() + LOAD_AHEAD_MILLIS);
+        store.sync();
+        if (loaded) {
+            schedule(reminder);
+        }
+        return reminder;
+    }
+
+    public void cancelReminder(Reminder reminder) {
+        reminder.markCancelled();
+        store.markDone(List.of(reminder));
+        // The copy in the wheel may have been replayed from disk rather than be this handle
+        Reminder live = scheduled.remove(reminder.getId());
+        if (live != null) {
+            wheel.cancel(live);
+        }
+    }
 
-        scheduler.schedule(() -> {
-            System.out.println(
-                "🔔 REMINDER: Task '" + task.getTitle() +
-                "' assigned to " + user.getName() +
-                " is due at " + task.getDueDate()
-            );
-        }, delayMillis, TimeUnit.MILLISECONDS);
+    private void preload() {
+        long now = System.currentTimeMillis();
+        store.loadUpTo(now + LOAD_AHEAD_MILLIS, now, this::schedule);
+    }
+
+    private void schedule(Reminder reminder) {
+        scheduled.put(reminder.getId(), reminder);
+        wheel.schedule(reminder, reminder.getFireAtMillis());
+    }
+
+    private void dispatch(List<Reminder> expired) {
+        for (int from = 0; from < expired.size(); from += DELIVERY_BATCH_SIZE) {
+            List<Reminder> batch = expired.subList(from, Math.min(from + DELIVERY_BATCH_SIZE, expired.size()));
+            deliveryPool.execute(() -> {
+                batch.forEach(this::deliver);
+                store.markDone(batch);
+            });
+        }
+    }
+
+    private void deliver(Reminder reminder) {
+        if (scheduled.remove(reminder.getId()) == null || reminder.isCancelled())
+            return;
+
+        // Prefer the live task and user; after a restart they may not be loaded (yet)
+        TaskManagementSystem system = TaskManagementSystem.getInstance();
+        Task task = reminder.getTask() != null ? reminder.getTask() : system.getTask(reminder.getTaskId());
+        User user = reminder.getUser() != null ? reminder.getUser() : system.getUser(reminder.getUserId());
+        String taskTitle = task != null ? task.getTitle() : reminder.getTaskTitle();
+        String userName = user != null ? user.getName() : reminder.getUserName();
+        LocalDate dueDate = task != null ? task.getDueDate() : reminder.getDueDate();
+        if (taskTitle == null || userName == null) {
+            System.out.println("Dropping reminder " + reminder.getId()
+                    + ": written by an older version and its task or user is not loaded.");
+            return;
+        }
+        System.out.println(
+            "🔔 REMINDER: Task '" + taskTitle +
+            "' assigned to " + userName +
+            " is due at " + dueDate
+        );
     }
 
     public void shutdown() {
         scheduler.shutdown();
+        deliveryPool.shutdown();
+        try {
+            deliveryPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        store.close();
     }
-}
\ No newline at end of file
+}